@@ -0,0 +1,86 @@
+package iuh.fit.fe.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo mọi lời gọi AWS SDK (S3, Rekognition) theo service/operation/outcome.
+ * aws.sdk.requests tính cả thời gian retry của SDK; aws.sdk.attempts đếm từng lần gửi để thấy retry.
+ * Với GetObject dạng stream, thời gian đo là tới lúc nhận header (chưa đọc body).
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class AwsSdkMetricsInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<Long> START_NANOS = new ExecutionAttribute<>("MetricsStartNanos");
+
+    MeterRegistry meterRegistry;
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        Counter.builder("aws.sdk.attempts")
+                .tag("service", service(executionAttributes))
+                .tag("operation", operation(executionAttributes))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        record(executionAttributes, "success", context.httpResponse().statusCode());
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        if (context.exception() instanceof SdkServiceException e) {
+            String outcome = e.isThrottlingException() ? "throttled"
+                    : e.statusCode() >= 500 ? "server_error" : "client_error";
+            record(executionAttributes, outcome, e.statusCode());
+        } else {
+            // Lỗi mạng/timeout/huỷ: không có response từ AWS
+            record(executionAttributes, "io_error", 0);
+        }
+    }
+
+    private void record(ExecutionAttributes executionAttributes, String outcome, int status) {
+        Long start = executionAttributes.getAttribute(START_NANOS);
+        if (start == null) {
+            return;
+        }
+        Timer.builder("aws.sdk.requests")
+                .tag("service", service(executionAttributes))
+                .tag("operation", operation(executionAttributes))
+                .tag("outcome", outcome)
+                .tag("status", String.valueOf(status))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String service(ExecutionAttributes executionAttributes) {
+        String name = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        return name != null ? name : "unknown";
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        String name = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return name != null ? name : "unknown";
+    }
+}
@@ -0,0 +1,33 @@
+package iuh.fit.fe.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ImageProcessingConfig {
+    @Value("${app.image.worker-threads:0}")
+    int workerThreads;
+
+    @Value("${app.image.queue-capacity:64}")
+    int queueCapacity;
+
+    /**
+     * Pool cho resize/encode ảnh (CPU-bound): số thread cố định (mặc định = số core) và hàng đợi có giới hạn,
+     * nên xử lý ảnh không bao giờ chiếm thread request. Hàng đợi đầy thì tác vụ bị từ chối
+     * (RejectedExecutionException) để nơi gọi tự bỏ qua.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService imageWorkerExecutor() {
+        int threads = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                Thread.ofPlatform().name("image-worker-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
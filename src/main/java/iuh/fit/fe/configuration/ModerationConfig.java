@@ -0,0 +1,20 @@
+package iuh.fit.fe.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ModerationConfig {
+    /**
+     * Executor cho các lời gọi Rekognition song song.
+     * Dùng virtual thread vì mỗi tác vụ chủ yếu chờ network; giới hạn đồng thời
+     * được áp bằng semaphore trong ImageValidationService.
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService moderationExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("moderation-", 0).factory());
+    }
+}
@@ -7,9 +7,16 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -20,21 +27,77 @@ public class S3Config {
     String secretKey;
     @Value("${aws.region}")
     String region;
+    @Value("${aws.s3.async.max-concurrency:64}")
+    int asyncMaxConcurrency;
+    @Value("${aws.s3.async.max-pending-acquires:1000}")
+    int asyncMaxPendingAcquires;
+    @Value("${aws.s3.async.connection-acquisition-timeout-seconds:10}")
+    long asyncAcquisitionTimeoutSeconds;
+    @Value("${aws.rekognition.client.max-attempts:2}")
+    int rekognitionMaxAttempts;
+    @Value("${aws.rekognition.client.attempt-timeout-ms:5000}")
+    long rekognitionAttemptTimeoutMs;
+    @Value("${aws.rekognition.client.call-timeout-ms:12000}")
+    long rekognitionCallTimeoutMs;
 
     @Bean
-    public S3Client s3Client() { // Đổi tên phương thức thành s3Client (theo chuẩn)
+    public S3Client s3Client(AwsSdkMetricsInterceptor metricsInterceptor) { // Đổi tên phương thức thành s3Client (theo chuẩn)
         AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKey, secretKey);
         return S3Client.builder()
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials))
+                .overrideConfiguration(c -> c.addExecutionInterceptor(metricsInterceptor))
+                .build();
+    }
+    /**
+     * Client bất đồng bộ (Netty NIO) để gửi song song các putObject trong một lô.
+     * max-concurrency là số kết nối tối đa trong pool, vượt quá sẽ xếp hàng chờ (max-pending-acquires).
+     */
+    @Bean
+    public S3AsyncClient s3AsyncClient(AwsSdkMetricsInterceptor metricsInterceptor) {
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretKey)))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(asyncMaxConcurrency)
+                        .maxPendingConnectionAcquires(asyncMaxPendingAcquires)
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(asyncAcquisitionTimeoutSeconds)))
+                .overrideConfiguration(c -> c.addExecutionInterceptor(metricsInterceptor))
+                .build();
+    }
+
+    // Đọc InputStream của multipart (blocking) cho AsyncRequestBody
+    @Bean(destroyMethod = "close")
+    public ExecutorService s3StreamExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-stream-", 0).factory());
+    }
+
+    // Ký URL presigned (PUT upload trực tiếp từ client); chỉ tính HMAC cục bộ, không gọi network
+    @Bean(destroyMethod = "close")
+    public S3Presigner s3Presigner() {
+        return S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(accessKey, secretKey)))
                 .build();
     }
+
+    /**
+     * Ít lần retry và timeout ngắn: throttle kéo dài do RekognitionGuard xử lý (giảm rate, ngắt mạch)
+     * thay vì để SDK giữ request và retry dồn thêm tải.
+     */
     @Bean
-    public RekognitionClient rekognitionClient() {
+    public RekognitionClient rekognitionClient(AwsSdkMetricsInterceptor metricsInterceptor) {
         return RekognitionClient.builder()
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretKey)))
+                .overrideConfiguration(c -> c
+                        .addExecutionInterceptor(metricsInterceptor)
+                        .retryStrategy(b -> b.maxAttempts(rekognitionMaxAttempts))
+                        .apiCallAttemptTimeout(Duration.ofMillis(rekognitionAttemptTimeoutMs))
+                        .apiCallTimeout(Duration.ofMillis(rekognitionCallTimeoutMs)))
                 .build();
     }
 }
\ No newline at end of file
@@ -22,8 +22,12 @@ public class SecurityConfig {
 
     private static final String[] PUBLIC_ENDPOINTS = {
     "/media/download/**",
+    "/actuator/health",
     };
 
+    // metrics/prometheus lộ số liệu nội bộ (nhãn bị từ chối, latency AWS, cache/quota theo owner)
+    private static final String METRICS_AUTHORITY = "READ_METRICS";
+
     private final CustomJwtDecoder customJwtDecoder;
 
     public SecurityConfig(CustomJwtDecoder customJwtDecoder) {
@@ -34,6 +38,8 @@ public class SecurityConfig {
     public SecurityFilterChain filterChain(HttpSecurity httpSecurity) throws Exception {
         httpSecurity.authorizeHttpRequests(request -> request.requestMatchers( PUBLIC_ENDPOINTS)
                 .permitAll()
+                .requestMatchers("/actuator/**")
+                .hasAuthority(METRICS_AUTHORITY)
                 .anyRequest()
                 .authenticated());
 
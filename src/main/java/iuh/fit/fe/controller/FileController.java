@@ -1,16 +1,23 @@
 package iuh.fit.fe.controller;
 
 import iuh.fit.fe.dto.ApiResponse;
+import iuh.fit.fe.dto.FileData;
+import iuh.fit.fe.dto.FilePageResponse;
 import iuh.fit.fe.dto.FileResponse;
+import iuh.fit.fe.service.FileQueryService;
 import iuh.fit.fe.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -20,7 +27,13 @@ import java.io.IOException;
 @FieldDefaults(level = AccessLevel.PRIVATE,makeFinal = true)
 @Slf4j
 public class FileController {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     FileService fileService;
+    FileQueryService fileQueryService;
     @PostMapping("/media/upload")
     ApiResponse<FileResponse> uploadFile(@RequestParam("file") MultipartFile file ) throws IOException {
         return ApiResponse.<FileResponse>builder()
@@ -28,12 +41,59 @@ public class FileController {
                 .build();
     }
 
+    /**
+     * Danh sách file của người dùng hiện tại, mới nhất trước; phân trang bằng cursor
+     */
+    @GetMapping("/media/files")
+    ApiResponse<FilePageResponse> listFiles(@RequestParam(value = "cursor", required = false) String cursor,
+                                            @RequestParam(value = "size", defaultValue = "20") int size,
+                                            @RequestParam(value = "contentType", required = false) String contentType) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<FilePageResponse>builder()
+                .result(fileQueryService.listFiles(userId, contentType, cursor, size))
+                .build();
+    }
+
+    @DeleteMapping("/media/{fileName}")
+    ApiResponse<Void> deleteFile(@PathVariable("fileName") String fileName) throws IOException {
+        fileService.deleteFile(fileName);
+        return ApiResponse.<Void>builder()
+                .message("File deleted successfully")
+                .build();
+    }
+
+    /**
+     * Range (206) và conditional GET (304 theo ETag/Last-Modified) do Spring xử lý trên FileSystemResource.
+     * Response 200 đầy đủ trên Tomcat được giao cho sendfile (zero-copy từ page cache ra socket).
+     */
     @GetMapping("/media/download/{fileName}")
-    ResponseEntity<Resource> downloadFile(@PathVariable("fileName") String fileName ) throws IOException {
+    ResponseEntity<Resource> downloadFile(@PathVariable("fileName") String fileName, HttpServletRequest request) throws IOException {
         var fileData = fileService.downloadFile(fileName);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_TYPE,fileData.contentType())
-                .body(fileData.resource());
+        var response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, fileData.contentType())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .lastModified(fileData.lastModified());
+        if (fileData.etag() != null) {
+            response.eTag(fileData.etag());
+        }
+
+        if (HttpMethod.GET.matches(request.getMethod())
+                && request.getHeader(HttpHeaders.RANGE) == null
+                && !new ServletWebRequest(request).checkNotModified(fileData.etag(), fileData.lastModified())
+                && offerSendfile(request, fileData)) {
+            return response.contentLength(fileData.contentLength()).build();
+        }
+        return response.body(fileData.resource());
+    }
+
+    private static boolean offerSendfile(HttpServletRequest request, FileData fileData) throws IOException {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) || !fileData.resource().isFile()) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, fileData.resource().getFile().getAbsolutePath());
+        request.setAttribute(SENDFILE_START, 0L);
+        request.setAttribute(SENDFILE_END, fileData.contentLength());
+        return true;
     }
 }
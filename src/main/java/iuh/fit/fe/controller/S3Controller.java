@@ -2,19 +2,39 @@ package iuh.fit.fe.controller;
 
 import iuh.fit.fe.dto.ApiResponse;
 import iuh.fit.fe.dto.DeleteRequest;
+import iuh.fit.fe.dto.DeleteResult;
+import iuh.fit.fe.dto.DeletionJobResponse;
+import iuh.fit.fe.dto.FinalizeUploadRequest;
 import iuh.fit.fe.dto.ImageValidationResult;
+import iuh.fit.fe.dto.ModerationBatchResponse;
+import iuh.fit.fe.dto.ModerationEventPageResponse;
+import iuh.fit.fe.dto.PresignUploadRequest;
+import iuh.fit.fe.dto.PresignedUploadResponse;
+import iuh.fit.fe.dto.UploadedImageResponse;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.service.AsyncModerationService;
+import iuh.fit.fe.service.DeletionJobService;
 import iuh.fit.fe.service.ImageValidationService;
 import iuh.fit.fe.service.S3Service;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
 @FieldDefaults(level = AccessLevel.PRIVATE,makeFinal = true)
@@ -24,42 +44,193 @@ import java.util.List;
 public class S3Controller {
     S3Service s3Service;
     ImageValidationService imageValidationService;
+    DeletionJobService deletionJobService;
+    AsyncModerationService asyncModerationService;
     @PreAuthorize("hasAuthority('UPLOAD_FILE')")
     @PostMapping("/s3/upload")
-    public ApiResponse<List<String>> uploadFile(@RequestParam("files") List<MultipartFile> files) throws IOException {
+    public ApiResponse<List<String>> uploadFile(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) String category) throws IOException {
         log.error("Vào đi huhu");
         return ApiResponse.<List<String>>builder()
                 .code(200)
                 .message("File uploaded successfully")
-                .result(s3Service.uploadFile(files))
+                .result(s3Service.uploadFile(files, category))
                 .build();
     }
 
-    @GetMapping("/download/{fileName}")
-    public ApiResponse<byte[]> downloadFile(@PathVariable String fileName) throws IOException {
-        byte[] fileData = s3Service.downloadFile(fileName);
-        return ApiResponse.<byte[]>builder()
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/s3/upload-images")
+    public ApiResponse<List<UploadedImageResponse>> uploadImages(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) String category) throws IOException {
+        return ApiResponse.<List<UploadedImageResponse>>builder()
+                .code(200)
+                .message("File uploaded successfully")
+                .result(s3Service.uploadImages(files, category))
+                .build();
+    }
+
+    /**
+     * Kiểm duyệt bất đồng bộ: ảnh được ghi vào quarantine và trả batchId ngay;
+     * URL trong kết quả chỉ dùng được sau khi ảnh được chấp nhận (xem /s3/upload/async/{batchId} hoặc outbox event)
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/s3/upload/async")
+    public ApiResponse<ModerationBatchResponse> uploadAsync(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) String category) throws IOException {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<ModerationBatchResponse>builder()
+                .code(202)
+                .message("File(s) accepted for moderation")
+                .result(asyncModerationService.submit(userId, files, category))
+                .build();
+    }
+
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @GetMapping("/s3/upload/async/{batchId}")
+    public ApiResponse<ModerationBatchResponse> moderationBatch(@PathVariable String batchId) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<ModerationBatchResponse>builder()
+                .code(200)
+                .result(asyncModerationService.getBatch(userId, batchId))
+                .build();
+    }
+
+    /**
+     * Outbox kết quả kiểm duyệt của mọi người dùng (owner, URL) - chỉ dành cho service tiêu thụ event
+     */
+    @PreAuthorize("hasAuthority('READ_MODERATION_EVENTS')")
+    @GetMapping("/s3/moderation/events")
+    public ApiResponse<ModerationEventPageResponse> moderationEvents(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ApiResponse.<ModerationEventPageResponse>builder()
+                .code(200)
+                .result(asyncModerationService.events(after, limit))
+                .build();
+    }
+
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/s3/presign-upload")
+    public ApiResponse<List<PresignedUploadResponse>> presignUpload(@RequestBody PresignUploadRequest request) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<List<PresignedUploadResponse>>builder()
+                .code(200)
+                .message("Presigned upload URL(s) issued")
+                .result(s3Service.presignUploads(userId, request.getFiles()))
+                .build();
+    }
+
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/s3/finalize")
+    public ApiResponse<List<String>> finalizeUpload(@RequestBody FinalizeUploadRequest request) throws IOException {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<List<String>>builder()
+                .code(200)
+                .message("File uploaded successfully")
+                .result(s3Service.finalizeUploads(userId, request.getKeys(), request.getCategory()))
+                .build();
+    }
+
+    @GetMapping("/download-url/{*fileName}")
+    public ApiResponse<String> downloadUrl(@PathVariable String fileName) {
+        return ApiResponse.<String>builder()
                 .code(200)
-                .message("File downloaded successfully")
-                .result(fileData)
+                .message("Presigned download URL issued")
+                .result(s3Service.presignedDownloadUrl(objectKey(fileName)))
                 .build();
     }
 
+    /**
+     * Stream object từ S3 thẳng ra response (không base64, không giữ cả file trên heap).
+     * Header Range được chuyển cho S3; S3 trả Content-Range thì response là 206 Partial Content.
+     * Khi bật aws.s3.download.redirect thì trả 302 tới URL presigned, client tải thẳng từ S3.
+     * Key có thể gồm nhiều segment (tiền tố hash "ab12/tên_id.ext") nên nhận toàn bộ phần còn lại của đường dẫn.
+     */
+    @GetMapping("/download/{*fileName}")
+    public ResponseEntity<StreamingResponseBody> downloadFile(
+            @PathVariable("fileName") String path,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        String fileName = objectKey(path);
+        if (s3Service.isDownloadRedirect()) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(s3Service.presignedDownloadUrl(fileName)))
+                    .build();
+        }
+        ResponseInputStream<GetObjectResponse> object = s3Service.downloadFile(fileName, range);
+        GetObjectResponse meta = object.response();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (meta.contentType() != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, meta.contentType());
+        }
+        if (meta.contentLength() != null) {
+            headers.setContentLength(meta.contentLength());
+        }
+        if (meta.eTag() != null) {
+            headers.setETag(meta.eTag());
+        }
+        if (meta.lastModified() != null) {
+            headers.setLastModified(meta.lastModified());
+        }
+        if (meta.contentRange() != null) {
+            headers.set(HttpHeaders.CONTENT_RANGE, meta.contentRange());
+        }
+
+        StreamingResponseBody body = out -> {
+            try (object) {
+                object.transferTo(out);
+            }
+        };
+        return ResponseEntity.status(meta.contentRange() != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .headers(headers)
+                .body(body);
+    }
+
     @PostMapping("/s3/delete")
-    public ApiResponse<List<String>> deleteByUrl(@RequestBody DeleteRequest deleteRequest) {
+    public ApiResponse<DeleteResult> deleteByUrl(@RequestBody DeleteRequest deleteRequest) {
         log.info("Deleting files with URLs: {}", deleteRequest.getUrls().toString());
-        List<String> deletedKeys = s3Service.deleteFiles(deleteRequest.getUrls());
-        return ApiResponse.<List<String>>builder()
+        DeleteResult result = s3Service.deleteFiles(deleteRequest.getUrls());
+        return ApiResponse.<DeleteResult>builder()
+                .code(200)
+                .message(result.getFailed().isEmpty() ? "File(s) deleted successfully" : "Some file(s) could not be deleted")
+                .result(result)
+                .build();
+    }
+
+    /**
+     * Xoá bất đồng bộ: ghi job vào MongoDB và trả jobId ngay, việc xoá do scheduler thực hiện
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/s3/delete/async")
+    public ApiResponse<DeletionJobResponse> deleteAsync(@RequestBody DeleteRequest deleteRequest) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<DeletionJobResponse>builder()
+                .code(202)
+                .message("Deletion job queued")
+                .result(deletionJobService.submit(userId, deleteRequest.getUrls()))
+                .build();
+    }
+
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @GetMapping("/s3/delete/jobs/{jobId}")
+    public ApiResponse<DeletionJobResponse> deletionJob(@PathVariable String jobId) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ApiResponse.<DeletionJobResponse>builder()
                 .code(200)
-                .message("File(s) deleted successfully")
-                .result(deletedKeys)
+                .result(deletionJobService.getJob(userId, jobId))
                 .build();
     }
 
     @PostMapping(value = "/s3/validate-many", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ApiResponse<List<ImageValidationResult>> validateMany(@RequestPart("files") List<MultipartFile> files) throws IOException {
+    public ApiResponse<List<ImageValidationResult>> validateMany(
+            @RequestPart("files") List<MultipartFile> files,
+            @RequestParam(required = false) String category) throws IOException {
         log.info("[Moderation] validate-many: {} file(s)", files != null ? files.size() : 0);
-        List<ImageValidationResult> results = imageValidationService.validateImagesDetailed(files);
+        List<ImageValidationResult> results = imageValidationService.validateImagesDetailed(files, category);
         return ApiResponse.<List<ImageValidationResult>>builder()
                 .code(200)
                 .message("Validated images")
@@ -78,4 +249,13 @@ public class S3Controller {
                 .result(uploadedUrl)
                 .build();
     }
+
+    // {*fileName} giữ cả dấu "/" đầu
+    private static String objectKey(String path) {
+        String key = path.startsWith("/") ? path.substring(1) : path;
+        if (key.isEmpty()) {
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        }
+        return key;
+    }
 }
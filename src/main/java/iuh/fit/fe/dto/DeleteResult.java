@@ -0,0 +1,19 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DeleteResult {
+    List<String> deleted;
+    // Key không tồn tại: S3 coi xoá key không tồn tại là thành công nên được xác định bằng HEAD trước khi xoá
+    List<String> notFound;
+    // Vẫn lỗi sau khi đã retry hết số lần cho phép
+    List<String> failed;
+}
@@ -0,0 +1,26 @@
+package iuh.fit.fe.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DeletionJobResponse {
+    String jobId;
+    String status;
+    int total;
+    List<String> deleted;
+    List<String> notFound;
+    List<String> failed;
+    String error;
+    Instant createdAt;
+    Instant completedAt;
+}
@@ -2,5 +2,8 @@ package iuh.fit.fe.dto;
 
 import org.springframework.core.io.Resource;
 
-public record FileData(String contentType, Resource resource) {
+/**
+ * etag là md5 của file (có thể null với bản ghi cũ), lastModified tính bằng epoch millis.
+ */
+public record FileData(String contentType, Resource resource, long contentLength, String etag, long lastModified) {
 }
@@ -13,6 +13,8 @@ public class FileInfo {
     String contentType;
     long size;
     String md5Checksum;
+    String sha256Checksum;
+    String blobId;
     String path;
     String url;
 }
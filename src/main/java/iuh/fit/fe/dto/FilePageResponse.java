@@ -0,0 +1,19 @@
+package iuh.fit.fe.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FilePageResponse {
+    List<FileSummaryResponse> items;
+    // Truyền lại làm ?cursor= để lấy trang kế tiếp; null khi đã hết
+    String nextCursor;
+}
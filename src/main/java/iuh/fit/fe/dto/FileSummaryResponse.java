@@ -0,0 +1,19 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FileSummaryResponse {
+    String fileName;
+    String url;
+    String contentType;
+    long size;
+    Instant createdAt;
+}
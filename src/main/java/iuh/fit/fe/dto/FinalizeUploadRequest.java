@@ -0,0 +1,18 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Builder
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FinalizeUploadRequest {
+    List<String> keys;
+    // Category của chính sách kiểm duyệt (default, seller, avatar, review); bỏ trống = default
+    String category;
+}
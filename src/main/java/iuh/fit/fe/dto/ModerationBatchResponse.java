@@ -0,0 +1,36 @@
+package iuh.fit.fe.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationBatchResponse {
+    String batchId;
+    String status;
+    List<Item> items;
+    Instant createdAt;
+    Instant completedAt;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Item {
+        String fileName;
+        // URL công khai, chỉ truy cập được sau khi status = ACCEPTED
+        String url;
+        String status;
+        String reason;
+    }
+}
@@ -0,0 +1,17 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationEventPageResponse {
+    List<ModerationEventResponse> items;
+    // Truyền lại làm ?after= ở lần đọc sau; không đổi khi chưa có event mới
+    String nextCursor;
+}
@@ -0,0 +1,25 @@
+package iuh.fit.fe.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationEventResponse {
+    String id;
+    Long seq;
+    String type;
+    String batchId;
+    String owner;
+    String fileName;
+    String url;
+    String reason;
+    Instant createdAt;
+}
@@ -0,0 +1,23 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PresignedUploadResponse {
+    String fileName;
+    // Key trong quarantine, gửi lại cho /s3/finalize sau khi PUT xong
+    String key;
+    String url;
+    String method;
+    // Header client bắt buộc gửi kèm (đã được ký: Content-Type, Content-Length)
+    Map<String, String> headers;
+    Instant expiresAt;
+}
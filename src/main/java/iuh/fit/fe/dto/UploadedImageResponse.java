@@ -0,0 +1,17 @@
+package iuh.fit.fe.dto;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UploadedImageResponse {
+    String url;
+    // label (vd "w320") -> URL ảnh phái sinh
+    Map<String, String> derivatives;
+}
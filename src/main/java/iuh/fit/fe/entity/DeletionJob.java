@@ -0,0 +1,43 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "deletion_job")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DeletionJob {
+    @MongoId
+    String id;
+    Status status;
+    String requestedBy;
+    // Key S3 cần xoá (đã tách từ URL)
+    List<String> s3Keys;
+    // Tên file lưu cục bộ (FileMgmt id) cần xoá
+    List<String> localFiles;
+
+    List<String> deleted;
+    List<String> notFound;
+    List<String> failed;
+    String error;
+
+    int attempts;
+    // Job RUNNING quá thời điểm này (instance xử lý bị dừng giữa chừng) được nhận lại
+    Instant leaseUntil;
+    Instant createdAt;
+    Instant completedAt;
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,26 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "file_blob")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FileBlob {
+    // SHA-256 (hex) của nội dung file
+    @MongoId
+    String id;
+    String path;
+    long size;
+    String md5Checksum;
+    // Số bản ghi file_mgmt đang trỏ tới blob này
+    long refCount;
+    Instant createdAt;
+}
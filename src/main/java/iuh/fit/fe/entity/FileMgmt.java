@@ -2,14 +2,21 @@ package iuh.fit.fe.entity;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.MongoId;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 @Document(collection = "file_mgmt")
+// Liệt kê theo owner (keyset trên createdAt, _id) và lọc thêm theo contentType
+@CompoundIndex(name = "owner_created", def = "{'ownerId': 1, 'createdAt': -1, '_id': -1}")
+@CompoundIndex(name = "owner_type_created", def = "{'ownerId': 1, 'contentType': 1, 'createdAt': -1, '_id': -1}")
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class FileMgmt {
     @MongoId
@@ -17,6 +24,13 @@ public class FileMgmt {
     String contentType;
     long size;
     String path;
+    @Indexed
     String md5Checksum;
+    @Indexed(sparse = true)
+    String sha256Checksum;
+    // Id của FileBlob dùng chung (chế độ dedup), null nếu file được lưu riêng
+    @Indexed
+    String blobId;
     String ownerId;
+    Instant createdAt;
 }
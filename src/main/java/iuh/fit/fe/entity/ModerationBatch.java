@@ -0,0 +1,64 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Lô ảnh upload ở chế độ kiểm duyệt bất đồng bộ: ảnh nằm dưới quarantine cho tới khi worker kiểm duyệt xong
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "moderation_batch")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationBatch {
+    @MongoId
+    String id;
+    Status status;
+    String owner;
+    // Category của chính sách kiểm duyệt lúc upload
+    String category;
+    List<Item> items;
+
+    int attempts;
+    // Lô RUNNING quá thời điểm này (instance xử lý bị dừng giữa chừng) được nhận lại
+    Instant leaseUntil;
+    // Lô PENDING chỉ được claim lại từ thời điểm này (backoff giữa các lần thử), null = ngay
+    Instant nextAttemptAt;
+    Instant createdAt;
+    Instant completedAt;
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED
+    }
+
+    /**
+     * PROMOTING: đã qua kiểm duyệt nhưng chưa copy được sang key công khai; chỉ thử lại bước copy, không bao giờ bị bỏ
+     */
+    public enum ItemStatus {
+        PENDING, PROMOTING, ACCEPTED, REJECTED, FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Item {
+        String fileName;
+        String quarantineKey;
+        // Key công khai sau khi được chấp nhận
+        String key;
+        long size;
+        ItemStatus status;
+        String reason;
+    }
+}
@@ -0,0 +1,46 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+/**
+ * Outbox kết quả kiểm duyệt bất đồng bộ, mỗi ảnh một event. Service khác đọc theo seq tăng dần
+ * (GET /s3/moderation/events) hoặc theo change stream của collection.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "moderation_event")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationEvent {
+    @MongoId(FieldType.OBJECT_ID)
+    String id;
+    // Số thứ tự cấp bằng $inc trên sequence_counter ngay trước khi ghi, dùng làm cursor đọc outbox
+    @Indexed(unique = true, sparse = true)
+    Long seq;
+    // Giờ của MongoDB lúc cấp seq, dùng để biết một số bị thiếu đã quá hạn chưa
+    Instant sequencedAt;
+    // {batchId}/{index}: lô bị xử lý lại sau khi hết lease không sinh event trùng
+    @Indexed(unique = true)
+    String dedupKey;
+    Type type;
+    @Indexed
+    String batchId;
+    String owner;
+    String fileName;
+    String key;
+    String url;
+    String reason;
+    Instant createdAt;
+
+    public enum Type {
+        ACCEPTED, REJECTED, FAILED
+    }
+}
@@ -0,0 +1,42 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+/**
+ * Ảnh đã được nhận khi Rekognition không khả dụng (fallback = review), chờ kiểm duyệt lại bằng tham chiếu S3
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "moderation_review")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationReview {
+    // Key S3 của ảnh gốc
+    @MongoId
+    String id;
+    Status status;
+    String owner;
+    // Category của chính sách kiểm duyệt lúc upload
+    String category;
+    // Lý do bị từ chối hoặc lỗi cuối cùng
+    String reason;
+
+    int attempts;
+    Instant leaseUntil;
+    // Bản ghi PENDING chỉ được claim lại từ thời điểm này (backoff sau lỗi riêng của ảnh), null = ngay
+    Instant nextAttemptAt;
+    Instant createdAt;
+    Instant completedAt;
+
+    public enum Status {
+        PENDING, RUNNING, APPROVED, REJECTED, FAILED
+    }
+}
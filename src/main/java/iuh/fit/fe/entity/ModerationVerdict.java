@@ -0,0 +1,38 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "moderation_verdict")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ModerationVerdict {
+    // SHA-256 (hex) của nội dung ảnh
+    @MongoId
+    String id;
+    // minConfidence đã gửi cho Rekognition khi tính kết quả này
+    float threshold;
+    List<Label> labels;
+    @Indexed(expireAfter = "30d")
+    Instant createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Label {
+        String name;
+        String parentName;
+        float confidence;
+    }
+}
@@ -0,0 +1,24 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "sequence_counter")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SequenceCounter {
+    // Tên dãy số, ví dụ moderation_event
+    @MongoId
+    String id;
+    // Số cuối cùng đã cấp, chỉ cập nhật bằng $inc
+    long value;
+    // Giờ của MongoDB ($currentDate) lúc cấp số gần nhất
+    Instant updatedAt;
+}
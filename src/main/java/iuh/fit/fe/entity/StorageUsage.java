@@ -0,0 +1,24 @@
+package iuh.fit.fe.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "storage_usage")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class StorageUsage {
+    // ownerId
+    @MongoId
+    String id;
+    // Tổng dung lượng (byte) và số object đang đứng tên owner, chỉ cập nhật bằng $inc
+    long bytes;
+    long objects;
+    Instant updatedAt;
+}
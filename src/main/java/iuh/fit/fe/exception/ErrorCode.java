@@ -28,7 +28,21 @@ public enum ErrorCode {
     UNAUTHENTICATED(1008, "Email or password is incorrect", HttpStatus.UNAUTHORIZED),
     UNAUTHORIZED(1009, "You are not authorized to perform this action", HttpStatus.BAD_REQUEST),
     FILE_NOT_VALID(1010, "File is not a valid image format", HttpStatus.BAD_REQUEST),
-    IMAGE_CONTENT_NOT_ALLOWED(1011, "Image contains inappropriate content", HttpStatus.BAD_REQUEST);
+    IMAGE_CONTENT_NOT_ALLOWED(1011, "Image contains inappropriate content", HttpStatus.BAD_REQUEST),
+    FILE_NOT_FOUND(1012, "File not found", HttpStatus.NOT_FOUND),
+    RANGE_NOT_SATISFIABLE(1013, "Requested range not satisfiable", HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE),
+    FILE_TOO_LARGE(1014, "File exceeds the maximum allowed size", HttpStatus.BAD_REQUEST),
+    UPLOAD_KEY_INVALID(1015, "Upload key is invalid or does not belong to the current user", HttpStatus.BAD_REQUEST),
+    DELETION_JOB_NOT_FOUND(1016, "Deletion job not found", HttpStatus.NOT_FOUND),
+    INVALID_CURSOR(1017, "Invalid page cursor", HttpStatus.BAD_REQUEST),
+    STORAGE_QUOTA_EXCEEDED(1018, "Storage quota exceeded", HttpStatus.BAD_REQUEST),
+    MODERATION_UNAVAILABLE(
+            1019, "Image moderation is temporarily unavailable, please retry later", HttpStatus.SERVICE_UNAVAILABLE),
+    MODERATION_BATCH_NOT_FOUND(1020, "Moderation batch not found", HttpStatus.NOT_FOUND),
+    ASYNC_MODERATION_DISABLED(1021, "Asynchronous moderation is not enabled", HttpStatus.BAD_REQUEST),
+    MODERATION_CATEGORY_INVALID(1022, "Unknown moderation category", HttpStatus.BAD_REQUEST),
+    MODERATION_SOURCE_UNREADABLE(
+            1023, "Image moderation could not read the image, please retry later", HttpStatus.SERVICE_UNAVAILABLE);
     int code;
     String message;
     private HttpStatusCode httpStatusCode;
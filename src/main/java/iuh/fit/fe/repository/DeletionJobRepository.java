@@ -0,0 +1,9 @@
+package iuh.fit.fe.repository;
+
+import iuh.fit.fe.entity.DeletionJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DeletionJobRepository extends MongoRepository<DeletionJob, String> {
+}
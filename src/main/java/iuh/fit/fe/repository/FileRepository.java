@@ -1,56 +1,224 @@
 package iuh.fit.fe.repository;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.fe.dto.FileInfo;
 import iuh.fit.fe.entity.FileMgmt;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Repository;
-import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Objects;
 import java.util.UUID;
 
 @Repository
 public class FileRepository {
+    final MeterRegistry meterRegistry;
+    final DistributionSummary writtenBytes;
+    final DistributionSummary readBytes;
+
     @Value("${app.file.storage-dir}")
     String fileStorage;
 
     @Value("${app.file.download-prefix}")
     String urlPrefix;
-    public FileInfo store(MultipartFile file) throws IOException {
-        Path folder = Paths.get(fileStorage);
 
-        String fileExtension = StringUtils
-                .getFilenameExtension(file.getOriginalFilename());
+    @Value("${app.file.fsync:always}")
+    FsyncPolicy fsyncPolicy;
 
-        String fileName = Objects.isNull(fileExtension)
-                ? UUID.randomUUID().toString()
-                : UUID.randomUUID() + "." + fileExtension;
+    @Value("${app.file.sha256-enabled:false}")
+    boolean sha256Enabled;
 
-        Path filePath = folder.resolve(fileName).normalize().toAbsolutePath();
+    /**
+     * ALWAYS: fsync file (và thư mục, nếu hệ điều hành cho phép) trước khi trả kết quả.
+     * NEVER: để hệ điều hành tự flush, nhanh hơn nhưng có thể mất file khi mất điện.
+     */
+    public enum FsyncPolicy {
+        ALWAYS, NEVER
+    }
 
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * File tạm đã ghi xong kèm kích thước và checksum; phải commit hoặc discard
+     */
+    public record StagedFile(Path tempFile, long size, String md5Checksum, String sha256Checksum) {
+    }
+
+    public FileRepository(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.writtenBytes = DistributionSummary.builder("file.storage.bytes")
+                .baseUnit("bytes")
+                .tag("operation", "write")
+                .register(meterRegistry);
+        this.readBytes = DistributionSummary.builder("file.storage.bytes")
+                .baseUnit("bytes")
+                .tag("operation", "read")
+                .register(meterRegistry);
+    }
+
+    public FileInfo store(MultipartFile file) throws IOException {
+        String fileName = newFileName(file);
+        Path filePath = Paths.get(fileStorage).resolve(fileName).normalize().toAbsolutePath();
+
+        StagedFile staged = stage(file, sha256Enabled);
+        commit(staged, filePath);
 
         return FileInfo.builder()
                 .name(fileName)
-                .size(file.getSize())
+                .size(staged.size())
                 .contentType(file.getContentType())
-                .md5Checksum(DigestUtils.md5DigestAsHex(file.getInputStream()))
+                .md5Checksum(staged.md5Checksum())
+                .sha256Checksum(staged.sha256Checksum())
                 .path(filePath.toString())
                 .url(urlPrefix + fileName)
                 .build();
     }
+
+    public String newFileName(MultipartFile file) {
+        String fileExtension = StringUtils
+                .getFilenameExtension(file.getOriginalFilename());
+
+        return Objects.isNull(fileExtension)
+                ? UUID.randomUUID().toString()
+                : UUID.randomUUID() + "." + fileExtension;
+    }
+
+    public String toUrl(String fileName) {
+        return urlPrefix + fileName;
+    }
+
+    // URL download của file lưu cục bộ -> tên file; null nếu không phải URL của service này
+    public String fileNameFromUrl(String url) {
+        if (url == null || !url.startsWith(urlPrefix) || url.length() == urlPrefix.length()) {
+            return null;
+        }
+        return url.substring(urlPrefix.length());
+    }
+
+    /**
+     * Ghi file trong một lần đọc: stream đi qua DigestInputStream (MD5, tuỳ chọn SHA-256) vào file tạm
+     * trong thư mục lưu trữ. commit() move atomic sang tên chính thức nên không bao giờ thấy file ghi dở.
+     */
+    public StagedFile stage(MultipartFile file, boolean withSha256) throws IOException {
+        MessageDigest md5 = newDigest("MD5");
+        MessageDigest sha256 = withSha256 ? newDigest("SHA-256") : null;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Path tempFile = Files.createTempFile(Paths.get(fileStorage), ".upload-", ".tmp");
+        long size;
+        try {
+            InputStream in = new DigestInputStream(file.getInputStream(), md5);
+            if (sha256 != null) {
+                in = new DigestInputStream(in, sha256);
+            }
+            try (in; FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                size = in.transferTo(Channels.newOutputStream(channel));
+                if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                    channel.force(true);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            sample.stop(timer("write", "failure"));
+            throw e;
+        }
+        sample.stop(timer("write", "success"));
+        writtenBytes.record(size);
+        return new StagedFile(tempFile, size,
+                HexFormat.of().formatHex(md5.digest()),
+                sha256 != null ? HexFormat.of().formatHex(sha256.digest()) : null);
+    }
+
+    public void commit(StagedFile staged, Path target) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(staged.tempFile(), target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            discard(staged);
+            sample.stop(timer("commit", "failure"));
+            throw e;
+        }
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            fsyncDirectory(target.getParent());
+        }
+        sample.stop(timer("commit", "success"));
+    }
+
+    public void discard(StagedFile staged) throws IOException {
+        Files.deleteIfExists(staged.tempFile());
+    }
+
+    /**
+     * Vị trí blob dùng chung theo SHA-256: blobs/ab/abcdef...-{generation} (chia thư mục con để tránh một thư mục quá lớn).
+     * generation khác nhau cho mỗi lần blob được tạo lại, để việc xoá bản cũ không đụng tới file của bản mới.
+     */
+    public Path blobPath(String sha256, String generation) {
+        return Paths.get(fileStorage).resolve("blobs").resolve(sha256.substring(0, 2)).resolve(sha256 + "-" + generation)
+                .normalize().toAbsolutePath();
+    }
+
+    public void delete(Path path) throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    // Lưu entry của thư mục sau khi rename; Windows không mở được thư mục như file nên bỏ qua
+    private static void fsyncDirectory(Path folder) {
+        try (FileChannel dir = FileChannel.open(folder, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // không hỗ trợ trên nền tảng hiện tại
+        }
+    }
+
+    // write: ghi file tạm (kèm fsync nếu bật); commit: rename + fsync thư mục; read: mở/kiểm tra file
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder("file.storage")
+                .tag("operation", operation)
+                .tag("fsync", fsyncPolicy.name().toLowerCase())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+
+    /**
+     * Trả về resource trỏ thẳng tới file trên đĩa, nội dung được stream khi ghi response
+     * (không đọc cả file vào heap). Số byte ghi nhận là kích thước file sẽ phục vụ.
+     */
     public Resource read(FileMgmt fileMgmt) throws IOException {
-        var data = Files.readAllBytes(Path.of(fileMgmt.getPath()));
-        return new ByteArrayResource(data);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Path path = Path.of(fileMgmt.getPath());
+        if (!Files.isReadable(path)) {
+            sample.stop(timer("read", "not_found"));
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        }
+        FileSystemResource resource = new FileSystemResource(path);
+        readBytes.record(resource.contentLength());
+        sample.stop(timer("read", "success"));
+        return resource;
     }
 }
@@ -0,0 +1,9 @@
+package iuh.fit.fe.repository;
+
+import iuh.fit.fe.entity.ModerationBatch;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ModerationBatchRepository extends MongoRepository<ModerationBatch, String> {
+}
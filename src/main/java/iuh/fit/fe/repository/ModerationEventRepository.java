@@ -0,0 +1,12 @@
+package iuh.fit.fe.repository;
+
+import iuh.fit.fe.entity.ModerationEvent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ModerationEventRepository extends MongoRepository<ModerationEvent, String> {
+    List<ModerationEvent> findByBatchId(String batchId);
+}
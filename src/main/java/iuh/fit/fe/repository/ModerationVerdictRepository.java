@@ -0,0 +1,9 @@
+package iuh.fit.fe.repository;
+
+import iuh.fit.fe.entity.ModerationVerdict;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ModerationVerdictRepository extends MongoRepository<ModerationVerdict, String> {
+}
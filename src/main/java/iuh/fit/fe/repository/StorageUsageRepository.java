@@ -0,0 +1,9 @@
+package iuh.fit.fe.repository;
+
+import iuh.fit.fe.entity.StorageUsage;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StorageUsageRepository extends MongoRepository<StorageUsage, String> {
+}
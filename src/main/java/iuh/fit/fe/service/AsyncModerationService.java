@@ -0,0 +1,557 @@
+package iuh.fit.fe.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iuh.fit.fe.dto.DeleteResult;
+import iuh.fit.fe.dto.ModerationBatchResponse;
+import iuh.fit.fe.dto.ModerationEventPageResponse;
+import iuh.fit.fe.dto.ModerationEventResponse;
+import iuh.fit.fe.entity.ModerationBatch;
+import iuh.fit.fe.entity.ModerationEvent;
+import iuh.fit.fe.entity.SequenceCounter;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.ModerationBatchRepository;
+import iuh.fit.fe.repository.ModerationEventRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Chế độ kiểm duyệt bất đồng bộ (opt-in, POST /s3/upload/async): ảnh được ghi vào quarantine và trả batchId ngay,
+ * thời gian request chỉ còn chi phí ghi S3. Scheduler claim nhiều lô một lúc (findAndModify kèm lease),
+ * kiểm duyệt chung mọi ảnh đang chờ, promote ảnh đạt sang key công khai và xoá ảnh bị từ chối.
+ * <p>
+ * Mỗi ảnh xong sinh một ModerationEvent (outbox moderation_event) trước khi trạng thái lô được lưu;
+ * lô bị xử lý lại sau khi hết lease khôi phục trạng thái từ event đã ghi nên không sinh event trùng.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class AsyncModerationService {
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String EVENT_SEQUENCE = "moderation_event";
+
+    final ModerationBatchRepository moderationBatchRepository;
+    final ModerationEventRepository moderationEventRepository;
+    final MongoTemplate mongoTemplate;
+    final S3Service s3Service;
+    final ImageValidationService imageValidationService;
+    final StorageQuotaService storageQuotaService;
+    final RekognitionGuard rekognitionGuard;
+    final MeterRegistry meterRegistry;
+
+    @Value("${aws.bucketName}")
+    String bucketName;
+
+    @Value("${aws.s3.async-moderation.enabled:false}")
+    boolean enabled;
+
+    @Value("${aws.s3.async-moderation.max-batches-per-round:20}")
+    int maxBatchesPerRound;
+
+    @Value("${aws.s3.async-moderation.lease-seconds:300}")
+    long leaseSeconds;
+
+    @Value("${aws.s3.async-moderation.max-attempts:5}")
+    int maxAttempts;
+
+    @Value("${aws.s3.async-moderation.base-backoff-seconds:5}")
+    long baseBackoffSeconds;
+
+    @Value("${aws.s3.async-moderation.max-backoff-seconds:600}")
+    long maxBackoffSeconds;
+
+    // Số thứ tự bị thiếu lâu hơn khoảng này (theo giờ MongoDB) coi như không bao giờ được ghi và bị bỏ qua
+    @Value("${aws.s3.async-moderation.events.gap-timeout-seconds:60}")
+    long eventGapTimeoutSeconds;
+
+    @Value("${aws.s3.async-moderation.events.max-page-size:500}")
+    int maxEventPageSize;
+
+    // Ảnh đang chờ trong một vòng xử lý
+    private record Pending(ModerationBatch batch, int index, ModerationBatch.Item item) {
+    }
+
+    public ModerationBatchResponse submit(String owner, List<MultipartFile> files, String category) throws IOException {
+        if (!enabled) {
+            throw new AppException(ErrorCode.ASYNC_MODERATION_DISABLED);
+        }
+        if (files == null || files.isEmpty()) {
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        }
+        for (MultipartFile file : files) {
+            if (file.getContentType() == null || !file.getContentType().startsWith("image/")) {
+                throw new AppException(ErrorCode.FILE_NOT_VALID);
+            }
+        }
+        String resolved = imageValidationService.resolveCategory(category);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            ModerationBatchResponse response = accept(owner, files, resolved);
+            outcome = "success";
+            return response;
+        } catch (AppException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("upload.batch")
+                    .tag("path", "s3-async")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private ModerationBatchResponse accept(String owner, List<MultipartFile> files, String category) throws IOException {
+        long totalBytes = files.stream().mapToLong(MultipartFile::getSize).sum();
+        storageQuotaService.reserve(owner, totalBytes, files.size());
+
+        String batchId = UUID.randomUUID().toString();
+        List<String> keys = files.stream().map(f -> s3Service.customizeFileName(f.getOriginalFilename())).toList();
+        List<String> quarantineKeys = keys.stream().map(k -> s3Service.moderationKey(batchId, k)).toList();
+        try {
+            s3Service.putQuarantined(quarantineKeys, files, owner);
+        } catch (IOException | RuntimeException e) {
+            storageQuotaService.release(owner, totalBytes, files.size());
+            throw e;
+        }
+
+        List<ModerationBatch.Item> items = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            items.add(ModerationBatch.Item.builder()
+                    .fileName(files.get(i).getOriginalFilename())
+                    .quarantineKey(quarantineKeys.get(i))
+                    .key(keys.get(i))
+                    .size(files.get(i).getSize())
+                    .status(ModerationBatch.ItemStatus.PENDING)
+                    .build());
+        }
+        ModerationBatch batch = ModerationBatch.builder()
+                .id(batchId)
+                .status(ModerationBatch.Status.PENDING)
+                .owner(owner)
+                .category(category)
+                .items(items)
+                .createdAt(Instant.now())
+                .build();
+        try {
+            moderationBatchRepository.insert(batch);
+        } catch (RuntimeException e) {
+            // Xoá có trừ quota theo metadata owner nên không release thêm
+            log.error("Failed to record moderation batch {}, removing quarantined objects: {}", batchId, e.getMessage());
+            s3Service.deleteKeys(quarantineKeys);
+            throw e;
+        }
+        log.info("Accepted {} file(s) for asynchronous moderation (batch {})", files.size(), batchId);
+        return toResponse(batch);
+    }
+
+    /**
+     * Lô kiểm duyệt của chính người dùng
+     */
+    public ModerationBatchResponse getBatch(String owner, String batchId) {
+        ModerationBatch batch = moderationBatchRepository.findById(batchId)
+                .orElseThrow(() -> new AppException(ErrorCode.MODERATION_BATCH_NOT_FOUND));
+        if (!batch.getOwner().equals(owner)) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+        return toResponse(batch);
+    }
+
+    /**
+     * Đọc outbox theo seq tăng dần, sau cursor after (null = từ đầu).
+     * Chỉ trả đoạn seq liên tục: seq được cấp trước khi insert nên event ghi xong sau event có seq lớn hơn
+     * vẫn được đọc đúng thứ tự. Chỗ trống chỉ bị bỏ qua khi seq ngay sau nó đã được cấp quá gap-timeout-seconds
+     * (cả hai mốc đều lấy từ giờ MongoDB), tức event đó không bao giờ được ghi (trùng dedupKey, instance dừng giữa chừng).
+     */
+    public ModerationEventPageResponse events(String after, int limit) {
+        int pageSize = limit > 0 ? Math.min(limit, maxEventPageSize) : maxEventPageSize;
+        long cursor = parseCursor(after);
+        List<ModerationEvent> events = mongoTemplate.find(new Query(Criteria.where("seq").gt(cursor))
+                .with(Sort.by("seq"))
+                .limit(pageSize), ModerationEvent.class);
+
+        List<ModerationEventResponse> items = new ArrayList<>(events.size());
+        Instant serverNow = null;
+        for (ModerationEvent event : events) {
+            if (event.getSeq() != cursor + 1) {
+                if (serverNow == null) {
+                    serverNow = serverTime();
+                }
+                if (event.getSequencedAt().isAfter(serverNow.minusSeconds(eventGapTimeoutSeconds))) {
+                    break;
+                }
+                log.warn("Skipping moderation event sequence {}-{} that was never written", cursor + 1, event.getSeq() - 1);
+            }
+            items.add(toResponse(event));
+            cursor = event.getSeq();
+        }
+        return ModerationEventPageResponse.builder()
+                .items(items)
+                .nextCursor(String.valueOf(cursor))
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${aws.s3.async-moderation.poll-interval-ms:1000}")
+    public void drain() {
+        if (!enabled) {
+            return;
+        }
+        List<ModerationBatch> batches;
+        while (rekognitionGuard.isCallPermitted() && !(batches = claimRound()).isEmpty()) {
+            if (!process(batches)) {
+                return;
+            }
+        }
+    }
+
+    private List<ModerationBatch> claimRound() {
+        List<ModerationBatch> batches = new ArrayList<>();
+        while (batches.size() < maxBatchesPerRound) {
+            Instant now = Instant.now();
+            Query query = new Query(new Criteria().orOperator(
+                    new Criteria().andOperator(
+                            Criteria.where("status").is(ModerationBatch.Status.PENDING),
+                            new Criteria().orOperator(
+                                    Criteria.where("nextAttemptAt").is(null),
+                                    Criteria.where("nextAttemptAt").lte(now))),
+                    Criteria.where("status").is(ModerationBatch.Status.RUNNING).and("leaseUntil").lt(now)))
+                    .with(Sort.by("createdAt"));
+            Update update = new Update()
+                    .set("status", ModerationBatch.Status.RUNNING)
+                    .set("leaseUntil", now.plus(Duration.ofSeconds(leaseSeconds)))
+                    .inc("attempts", 1);
+            ModerationBatch batch = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().returnNew(true), ModerationBatch.class);
+            if (batch == null) {
+                break;
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Kiểm duyệt chung mọi ảnh đang chờ của các lô đã claim.
+     * false: không tiến triển được vì Rekognition không khả dụng, dừng các vòng tiếp theo.
+     */
+    private boolean process(List<ModerationBatch> batches) {
+        List<ModerationEvent> events = new ArrayList<>();
+        batches.stream().filter(batch -> batch.getAttempts() > 1).forEach(batch -> recover(batch, events));
+
+        List<Pending> pending = new ArrayList<>();
+        for (ModerationBatch batch : batches) {
+            for (int i = 0; i < batch.getItems().size(); i++) {
+                if (batch.getItems().get(i).getStatus() == ModerationBatch.ItemStatus.PENDING) {
+                    pending.add(new Pending(batch, i, batch.getItems().get(i)));
+                }
+            }
+        }
+
+        Map<String, ErrorCode> failed = review(pending);
+
+        List<Pending> rejected = new ArrayList<>();
+        // answered: lô có ít nhất một ảnh được Rekognition trả lời (kể cả lỗi riêng của ảnh);
+        // unavailable: lô mà mọi ảnh chờ đều gặp Rekognition không khả dụng, lần thử này không tính cho lô đó
+        Set<String> answered = new HashSet<>();
+        Set<String> unavailable = new HashSet<>();
+        for (Pending p : pending) {
+            ErrorCode error = failed.get(p.item().getQuarantineKey());
+            if (error == null) {
+                p.item().setStatus(ModerationBatch.ItemStatus.PROMOTING);
+                answered.add(p.batch().getId());
+            } else if (ImageValidationService.isImageRejection(error)) {
+                rejected.add(p);
+                answered.add(p.batch().getId());
+            } else if (error == ErrorCode.MODERATION_UNAVAILABLE) {
+                unavailable.add(p.batch().getId());
+            } else {
+                // Lỗi riêng của ảnh (không đọc được object do IAM/S3): giữ trạng thái chờ, tính vào số lần thử
+                answered.add(p.batch().getId());
+            }
+        }
+        unavailable.removeAll(answered);
+        boolean available = pending.isEmpty() || !answered.isEmpty();
+
+        // Ảnh đạt ở vòng này và ảnh đạt từ vòng trước nhưng copy lỗi
+        promote(batches, events);
+        if (!rejected.isEmpty()) {
+            DeleteResult result = s3Service.deleteKeys(quarantineKeys(rejected));
+            Set<String> failedDeletes = new HashSet<>(result.getFailed());
+            rejected.stream()
+                    .filter(p -> !failedDeletes.contains(p.item().getQuarantineKey()))
+                    .forEach(p -> finish(p, ModerationBatch.ItemStatus.REJECTED,
+                            failed.get(p.item().getQuarantineKey()).getMessage(), events));
+        }
+
+        for (ModerationBatch batch : batches) {
+            if (unavailable.contains(batch.getId())) {
+                // Không tính vào số lần thử: lỗi không nằm ở ảnh
+                batch.setAttempts(batch.getAttempts() - 1);
+            } else if (batch.getAttempts() >= maxAttempts && hasItems(batch, ModerationBatch.ItemStatus.PENDING)) {
+                giveUp(batch, events);
+            }
+            // Ảnh đang PROMOTING đã qua kiểm duyệt: lô chờ tới khi copy xong, không bị bỏ dù hết số lần thử
+            if (!hasItems(batch, ModerationBatch.ItemStatus.PENDING) && !hasItems(batch, ModerationBatch.ItemStatus.PROMOTING)) {
+                batch.setStatus(ModerationBatch.Status.COMPLETED);
+                batch.setCompletedAt(Instant.now());
+                batch.setNextAttemptAt(null);
+                log.info("Moderation batch {} completed", batch.getId());
+            } else {
+                batch.setStatus(ModerationBatch.Status.PENDING);
+                batch.setNextAttemptAt(Instant.now().plusSeconds(backoffSeconds(batch.getAttempts())));
+            }
+            batch.setLeaseUntil(null);
+        }
+
+        // Event ghi trước trạng thái lô: dừng giữa chừng thì lần xử lý lại khôi phục được từ event
+        publish(events);
+        moderationBatchRepository.saveAll(batches);
+        return available;
+    }
+
+    /**
+     * Copy mọi ảnh PROMOTING của các lô sang key công khai. Copy lỗi thì ảnh giữ PROMOTING để vòng sau thử lại;
+     * riêng ảnh mà key công khai đã tồn tại (copy xong nhưng trạng thái chưa kịp lưu, bản quarantine đã bị xoá)
+     * được coi là đã promote, còn ảnh mất cả hai bản (quarantine hết hạn theo lifecycle rule) thì báo FAILED.
+     */
+    private void promote(List<ModerationBatch> batches, List<ModerationEvent> events) {
+        List<Pending> promoting = new ArrayList<>();
+        for (ModerationBatch batch : batches) {
+            for (int i = 0; i < batch.getItems().size(); i++) {
+                if (batch.getItems().get(i).getStatus() == ModerationBatch.ItemStatus.PROMOTING) {
+                    promoting.add(new Pending(batch, i, batch.getItems().get(i)));
+                }
+            }
+        }
+        if (promoting.isEmpty()) {
+            return;
+        }
+        Set<String> promoted = s3Service.promoteEach(quarantineKeys(promoting),
+                promoting.stream().map(p -> p.item().getKey()).toList());
+        List<Pending> retry = promoting.stream()
+                .filter(p -> !promoted.contains(p.item().getQuarantineKey()))
+                .toList();
+        Set<String> existing = retry.isEmpty()
+                ? Set.of()
+                : s3Service.existingKeys(retry.stream().map(p -> p.item().getKey()).toList());
+        List<Pending> unresolved = retry.stream().filter(p -> !existing.contains(p.item().getKey())).toList();
+        Set<String> lost = unresolved.isEmpty() ? Set.of() : s3Service.missingKeys(quarantineKeys(unresolved));
+        for (Pending p : promoting) {
+            if (promoted.contains(p.item().getQuarantineKey()) || existing.contains(p.item().getKey())) {
+                finish(p, ModerationBatch.ItemStatus.ACCEPTED, null, events);
+            } else if (lost.contains(p.item().getQuarantineKey())) {
+                finish(p, ModerationBatch.ItemStatus.FAILED, "Quarantined object no longer exists", events);
+            }
+        }
+        if (unresolved.size() > lost.size()) {
+            log.warn("{} accepted image(s) could not be promoted, retrying later", unresolved.size() - lost.size());
+        }
+    }
+
+    private static boolean hasItems(ModerationBatch batch, ModerationBatch.ItemStatus status) {
+        return batch.getItems().stream().anyMatch(item -> item.getStatus() == status);
+    }
+
+    // base * 2^(attempts - 1), tối đa max-backoff-seconds
+    private long backoffSeconds(int attempts) {
+        return Math.min(maxBackoffSeconds, baseBackoffSeconds << Math.min(Math.max(attempts - 1, 0), 20));
+    }
+
+    private Map<String, ErrorCode> review(List<Pending> pending) {
+        if (pending.isEmpty()) {
+            return Map.of();
+        }
+        // Mỗi lô kiểm duyệt theo category lúc upload
+        Map<String, List<Pending>> byCategory = new HashMap<>();
+        pending.forEach(p -> byCategory
+                .computeIfAbsent(ModerationPolicy.normalize(p.batch().getCategory()), c -> new ArrayList<>())
+                .add(p));
+        try {
+            Map<String, ErrorCode> failed = new HashMap<>();
+            for (Map.Entry<String, List<Pending>> group : byCategory.entrySet()) {
+                failed.putAll(imageValidationService.reviewS3Images(
+                        bucketName, quarantineKeys(group.getValue()), group.getKey()));
+            }
+            return failed;
+        } catch (AppException e) {
+            // Luồng bị ngắt giữa chừng: mọi ảnh giữ trạng thái chờ
+            Map<String, ErrorCode> unavailable = new HashMap<>();
+            pending.forEach(p -> unavailable.put(p.item().getQuarantineKey(), ErrorCode.MODERATION_UNAVAILABLE));
+            return unavailable;
+        }
+    }
+
+    /**
+     * Lô bị nhận lại sau khi hết lease: lấy trạng thái ảnh đã có event, ảnh đã có key công khai coi như đã promote
+     */
+    private void recover(ModerationBatch batch, List<ModerationEvent> events) {
+        Map<String, ModerationEvent> published = new HashMap<>();
+        moderationEventRepository.findByBatchId(batch.getId()).forEach(event -> published.put(event.getDedupKey(), event));
+
+        List<Pending> unknown = new ArrayList<>();
+        for (int i = 0; i < batch.getItems().size(); i++) {
+            ModerationBatch.Item item = batch.getItems().get(i);
+            if (item.getStatus() != ModerationBatch.ItemStatus.PENDING) {
+                continue;
+            }
+            ModerationEvent event = published.get(dedupKey(batch.getId(), i));
+            if (event != null) {
+                item.setStatus(ModerationBatch.ItemStatus.valueOf(event.getType().name()));
+                item.setReason(event.getReason());
+            } else {
+                unknown.add(new Pending(batch, i, item));
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+        Set<String> existing = s3Service.existingKeys(unknown.stream().map(p -> p.item().getKey()).toList());
+        unknown.stream()
+                .filter(p -> existing.contains(p.item().getKey()))
+                .forEach(p -> finish(p, ModerationBatch.ItemStatus.ACCEPTED, null, events));
+    }
+
+    // Hết số lần thử: xoá ảnh còn chờ khỏi quarantine (trừ quota theo metadata) và báo FAILED
+    private void giveUp(ModerationBatch batch, List<ModerationEvent> events) {
+        List<Pending> remaining = new ArrayList<>();
+        for (int i = 0; i < batch.getItems().size(); i++) {
+            if (batch.getItems().get(i).getStatus() == ModerationBatch.ItemStatus.PENDING) {
+                remaining.add(new Pending(batch, i, batch.getItems().get(i)));
+            }
+        }
+        log.error("Moderation batch {} gave up after {} attempt(s), removing {} quarantined object(s)",
+                batch.getId(), batch.getAttempts(), remaining.size());
+        s3Service.deleteKeys(quarantineKeys(remaining));
+        remaining.forEach(p -> finish(p, ModerationBatch.ItemStatus.FAILED, "Moderation did not complete", events));
+    }
+
+    private void finish(Pending p, ModerationBatch.ItemStatus status, String reason, List<ModerationEvent> events) {
+        p.item().setStatus(status);
+        p.item().setReason(reason);
+        events.add(ModerationEvent.builder()
+                .dedupKey(dedupKey(p.batch().getId(), p.index()))
+                .type(ModerationEvent.Type.valueOf(status.name()))
+                .batchId(p.batch().getId())
+                .owner(p.batch().getOwner())
+                .fileName(p.item().getFileName())
+                .key(status == ModerationBatch.ItemStatus.ACCEPTED ? p.item().getKey() : null)
+                .url(status == ModerationBatch.ItemStatus.ACCEPTED ? s3Service.toUrl(p.item().getKey()) : null)
+                .reason(reason)
+                .createdAt(Instant.now())
+                .build());
+    }
+
+    // Cấp một khoảng seq bằng một lần $inc rồi insert không thứ tự; trùng dedupKey (event đã ghi ở lần xử lý trước)
+    // thì bỏ qua, seq của event đó thành chỗ trống mà người đọc bỏ qua sau gap-timeout-seconds
+    private void publish(List<ModerationEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        SequenceCounter counter = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(EVENT_SEQUENCE)),
+                new Update().inc("value", events.size()).currentDate("updatedAt"),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                SequenceCounter.class);
+        long seq = counter.getValue() - events.size();
+        for (ModerationEvent event : events) {
+            event.setSeq(++seq);
+            event.setSequencedAt(counter.getUpdatedAt());
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ModerationEvent.class)
+                    .insert(events)
+                    .execute();
+        } catch (BulkOperationException e) {
+            if (e.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                throw e;
+            }
+        }
+    }
+
+    private static List<String> quarantineKeys(List<Pending> pending) {
+        return pending.stream().map(p -> p.item().getQuarantineKey()).toList();
+    }
+
+    private static String dedupKey(String batchId, int index) {
+        return batchId + "/" + index;
+    }
+
+    private static long parseCursor(String after) {
+        if (after == null || after.isBlank()) {
+            return 0;
+        }
+        try {
+            long cursor = Long.parseLong(after);
+            if (cursor < 0) {
+                throw new AppException(ErrorCode.INVALID_CURSOR);
+            }
+            return cursor;
+        } catch (NumberFormatException e) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+    }
+
+    // Giờ của MongoDB, cùng đồng hồ với sequencedAt nên lệch giờ giữa các instance không ảnh hưởng
+    private Instant serverTime() {
+        return mongoTemplate.executeCommand(new Document("hello", 1)).getDate("localTime").toInstant();
+    }
+
+    private ModerationBatchResponse toResponse(ModerationBatch batch) {
+        return ModerationBatchResponse.builder()
+                .batchId(batch.getId())
+                .status(batch.getStatus().name())
+                .items(batch.getItems().stream()
+                        .map(item -> ModerationBatchResponse.Item.builder()
+                                .fileName(item.getFileName())
+                                .url(s3Service.toUrl(item.getKey()))
+                                .status(item.getStatus().name())
+                                .reason(item.getReason())
+                                .build())
+                        .toList())
+                .createdAt(batch.getCreatedAt())
+                .completedAt(batch.getCompletedAt())
+                .build();
+    }
+
+    private ModerationEventResponse toResponse(ModerationEvent event) {
+        return ModerationEventResponse.builder()
+                .id(event.getId())
+                .seq(event.getSeq())
+                .type(event.getType().name())
+                .batchId(event.getBatchId())
+                .owner(event.getOwner())
+                .fileName(event.getFileName())
+                .url(event.getUrl())
+                .reason(event.getReason())
+                .createdAt(event.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,205 @@
+package iuh.fit.fe.service;
+
+import iuh.fit.fe.dto.DeleteResult;
+import iuh.fit.fe.dto.DeletionJobResponse;
+import iuh.fit.fe.entity.DeletionJob;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.DeletionJobRepository;
+import iuh.fit.fe.repository.FileRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hàng đợi xoá bất đồng bộ: yêu cầu được ghi thành DeletionJob trong MongoDB và trả jobId ngay.
+ * Scheduler nhận (claim) nhiều job một lúc, gộp key S3 của chúng vào chung các lô DeleteObjects,
+ * đồng thời xoá FileMgmt + file cục bộ. Job được claim bằng findAndModify kèm lease nên chạy được nhiều instance;
+ * instance chết giữa chừng thì job hết lease và được nhận lại.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class DeletionJobService {
+    final DeletionJobRepository deletionJobRepository;
+    final MongoTemplate mongoTemplate;
+    final S3Service s3Service;
+    final FileService fileService;
+    final FileRepository fileRepository;
+
+    // Ngừng claim thêm job khi tổng số key đã gom đạt mức này
+    @Value("${aws.s3.delete.queue.max-keys-per-round:5000}")
+    int maxKeysPerRound;
+
+    @Value("${aws.s3.delete.queue.lease-seconds:300}")
+    long leaseSeconds;
+
+    @Value("${aws.s3.delete.queue.max-attempts:5}")
+    int maxAttempts;
+
+    public DeletionJobResponse submit(String userId, List<String> urlsOrKeys) {
+        if (urlsOrKeys == null || urlsOrKeys.isEmpty()) {
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        }
+        Set<String> s3Keys = new LinkedHashSet<>();
+        Set<String> localFiles = new LinkedHashSet<>();
+        for (String input : urlsOrKeys) {
+            String localFile = fileRepository.fileNameFromUrl(input);
+            if (localFile != null) {
+                localFiles.add(localFile);
+            } else {
+                s3Keys.add(s3Service.extractKey(input));
+            }
+        }
+
+        DeletionJob job = deletionJobRepository.save(DeletionJob.builder()
+                .status(DeletionJob.Status.PENDING)
+                .requestedBy(userId)
+                .s3Keys(List.copyOf(s3Keys))
+                .localFiles(List.copyOf(localFiles))
+                .createdAt(Instant.now())
+                .build());
+        log.info("Queued deletion job {} ({} S3 key(s), {} local file(s))", job.getId(), s3Keys.size(), localFiles.size());
+        return toResponse(job);
+    }
+
+    /**
+     * Job xoá của chính người dùng
+     */
+    public DeletionJobResponse getJob(String userId, String jobId) {
+        DeletionJob job = deletionJobRepository.findById(jobId)
+                .orElseThrow(() -> new AppException(ErrorCode.DELETION_JOB_NOT_FOUND));
+        if (!job.getRequestedBy().equals(userId)) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+        return toResponse(job);
+    }
+
+    @Scheduled(fixedDelayString = "${aws.s3.delete.queue.poll-interval-ms:1000}")
+    public void drain() {
+        List<DeletionJob> jobs;
+        while (!(jobs = claimRound()).isEmpty()) {
+            process(jobs);
+        }
+    }
+
+    private List<DeletionJob> claimRound() {
+        List<DeletionJob> jobs = new ArrayList<>();
+        int keys = 0;
+        while (keys < maxKeysPerRound) {
+            Instant now = Instant.now();
+            Query query = new Query(new Criteria().orOperator(
+                    Criteria.where("status").is(DeletionJob.Status.PENDING),
+                    Criteria.where("status").is(DeletionJob.Status.RUNNING).and("leaseUntil").lt(now)))
+                    .with(Sort.by("createdAt"));
+            Update update = new Update()
+                    .set("status", DeletionJob.Status.RUNNING)
+                    .set("leaseUntil", now.plus(Duration.ofSeconds(leaseSeconds)))
+                    .inc("attempts", 1);
+            DeletionJob job = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().returnNew(true), DeletionJob.class);
+            if (job == null) {
+                break;
+            }
+            jobs.add(job);
+            keys += size(job.getS3Keys()) + size(job.getLocalFiles());
+        }
+        return jobs;
+    }
+
+    private void process(List<DeletionJob> jobs) {
+        // Gộp key của nhiều job để gửi chung các lô DeleteObjects
+        Set<String> s3Keys = new LinkedHashSet<>();
+        jobs.forEach(job -> s3Keys.addAll(job.getS3Keys() != null ? job.getS3Keys() : List.of()));
+
+        DeleteResult result;
+        try {
+            result = s3Keys.isEmpty()
+                    ? DeleteResult.builder().deleted(List.of()).notFound(List.of()).failed(List.of()).build()
+                    : s3Service.deleteWithDerivatives(new ArrayList<>(s3Keys));
+        } catch (RuntimeException e) {
+            log.error("Deletion round for {} job(s) failed: {}", jobs.size(), e.getMessage(), e);
+            jobs.forEach(job -> retryOrFail(job, e.getMessage()));
+            return;
+        }
+        log.info("Deletion round: {} job(s), {} S3 key(s)", jobs.size(), s3Keys.size());
+
+        Set<String> deleted = new HashSet<>(result.getDeleted());
+        Set<String> notFound = new HashSet<>(result.getNotFound());
+        for (DeletionJob job : jobs) {
+            List<String> jobDeleted = new ArrayList<>();
+            List<String> jobNotFound = new ArrayList<>();
+            List<String> jobFailed = new ArrayList<>();
+            for (String key : job.getS3Keys() != null ? job.getS3Keys() : List.<String>of()) {
+                (deleted.contains(key) ? jobDeleted : notFound.contains(key) ? jobNotFound : jobFailed).add(key);
+            }
+            // File cục bộ chỉ xoá khi thuộc người gửi job; file của người khác báo là không tìm thấy
+            for (String fileName : job.getLocalFiles() != null ? job.getLocalFiles() : List.<String>of()) {
+                try {
+                    (fileService.deleteStoredFile(job.getRequestedBy(), fileName) ? jobDeleted : jobNotFound).add(fileName);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to delete local file {} (job {}): {}", fileName, job.getId(), e.getMessage());
+                    jobFailed.add(fileName);
+                }
+            }
+
+            job.setDeleted(jobDeleted);
+            job.setNotFound(jobNotFound);
+            job.setFailed(jobFailed);
+            job.setStatus(jobFailed.isEmpty() ? DeletionJob.Status.COMPLETED : DeletionJob.Status.FAILED);
+            job.setLeaseUntil(null);
+            job.setCompletedAt(Instant.now());
+            deletionJobRepository.save(job);
+        }
+    }
+
+    private void retryOrFail(DeletionJob job, String error) {
+        job.setError(error);
+        job.setLeaseUntil(null);
+        if (job.getAttempts() >= maxAttempts) {
+            job.setStatus(DeletionJob.Status.FAILED);
+            job.setCompletedAt(Instant.now());
+        } else {
+            job.setStatus(DeletionJob.Status.PENDING);
+        }
+        deletionJobRepository.save(job);
+    }
+
+    private DeletionJobResponse toResponse(DeletionJob job) {
+        return DeletionJobResponse.builder()
+                .jobId(job.getId())
+                .status(job.getStatus().name())
+                .total(size(job.getS3Keys()) + size(job.getLocalFiles()))
+                .deleted(job.getDeleted())
+                .notFound(job.getNotFound())
+                .failed(job.getFailed())
+                .error(job.getError())
+                .createdAt(job.getCreatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+
+    private static int size(List<String> list) {
+        return list != null ? list.size() : 0;
+    }
+}
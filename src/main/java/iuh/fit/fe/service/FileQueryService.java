@@ -0,0 +1,148 @@
+package iuh.fit.fe.service;
+
+import iuh.fit.fe.dto.FilePageResponse;
+import iuh.fit.fe.dto.FileSummaryResponse;
+import iuh.fit.fe.entity.FileMgmt;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.FileRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Truy vấn metadata file_mgmt: phân trang keyset theo (createdAt, _id) giảm dần trên index owner_created,
+ * nên mỗi trang chỉ quét đúng page size bản ghi dù collection lớn tới đâu. Chỉ đọc các field cần trả về.
+ * Bản ghi tạo trước khi có createdAt được backfill để keyset phủ được mọi bản ghi.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class FileQueryService {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int BACKFILL_CHUNK = 1000;
+
+    MongoTemplate mongoTemplate;
+    FileRepository fileRepository;
+
+    @NonFinal
+    volatile boolean backfilled;
+
+    public FilePageResponse listFiles(String ownerId, String contentType, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        Criteria criteria = Criteria.where("ownerId").is(ownerId);
+        if (contentType != null && !contentType.isBlank()) {
+            criteria = criteria.and("contentType").is(contentType);
+        }
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor after = decodeCursor(cursor);
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("_id").lt(after.id()));
+        }
+
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")))
+                .limit(pageSize + 1);
+        query.fields().include("_id", "contentType", "size", "createdAt");
+
+        List<FileMgmt> rows = mongoTemplate.find(query, FileMgmt.class);
+        boolean hasMore = rows.size() > pageSize;
+        List<FileMgmt> page = hasMore ? rows.subList(0, pageSize) : rows;
+
+        FileMgmt last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return FilePageResponse.builder()
+                .items(page.stream().map(this::toSummary).toList())
+                .nextCursor(hasMore && last.getCreatedAt() != null ? encodeCursor(last) : null)
+                .build();
+    }
+
+    /**
+     * Gán createdAt cho bản ghi chưa có (trước khi có phân trang) theo thời điểm sửa file trên đĩa;
+     * file không đọc được thì dùng epoch để bản ghi nằm cuối danh sách. Chỉ ghi khi createdAt vẫn trống
+     * nên nhiều instance chạy cùng lúc không ghi đè nhau. Hết bản ghi cần gán thì instance không quét lại nữa.
+     */
+    @Scheduled(fixedDelayString = "${app.file.created-at-backfill-interval-ms:60000}")
+    public void backfillCreatedAt() {
+        if (backfilled) {
+            return;
+        }
+        long updated = 0;
+        List<FileMgmt> rows;
+        do {
+            Query query = new Query(Criteria.where("createdAt").is(null)).limit(BACKFILL_CHUNK);
+            query.fields().include("_id", "path");
+            rows = mongoTemplate.find(query, FileMgmt.class);
+            if (rows.isEmpty()) {
+                break;
+            }
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileMgmt.class);
+            for (FileMgmt row : rows) {
+                bulk.updateOne(new Query(Criteria.where("_id").is(row.getId()).and("createdAt").is(null)),
+                        new Update().set("createdAt", legacyCreatedAt(row)));
+            }
+            updated += bulk.execute().getModifiedCount();
+        } while (rows.size() == BACKFILL_CHUNK);
+        backfilled = true;
+        if (updated > 0) {
+            log.info("Backfilled createdAt of {} file record(s)", updated);
+        }
+    }
+
+    private static Instant legacyCreatedAt(FileMgmt fileMgmt) {
+        try {
+            return Files.getLastModifiedTime(Path.of(fileMgmt.getPath())).toInstant();
+        } catch (IOException | RuntimeException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private FileSummaryResponse toSummary(FileMgmt fileMgmt) {
+        return FileSummaryResponse.builder()
+                .fileName(fileMgmt.getId())
+                .url(fileRepository.toUrl(fileMgmt.getId()))
+                .contentType(fileMgmt.getContentType())
+                .size(fileMgmt.getSize())
+                .createdAt(fileMgmt.getCreatedAt())
+                .build();
+    }
+
+    private record Cursor(Instant createdAt, String id) {
+    }
+
+    // Cursor dạng base64url("{epochMillis}:{id}")
+    private static String encodeCursor(FileMgmt fileMgmt) {
+        String raw = fileMgmt.getCreatedAt().toEpochMilli() + ":" + fileMgmt.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new Cursor(Instant.ofEpochMilli(Long.parseLong(raw.substring(0, colon))), raw.substring(colon + 1));
+        } catch (RuntimeException e) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package iuh.fit.fe.service;
 
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import iuh.fit.fe.dto.FileData;
+import iuh.fit.fe.dto.FileInfo;
 import iuh.fit.fe.dto.FileResponse;
+import iuh.fit.fe.entity.FileBlob;
+import iuh.fit.fe.entity.FileMgmt;
 import iuh.fit.fe.exception.AppException;
 import iuh.fit.fe.exception.ErrorCode;
 import iuh.fit.fe.mapper.FileMgmtMapper;
@@ -11,31 +17,60 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
 @Service
-@FieldDefaults(level = AccessLevel.PRIVATE,makeFinal = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 @Slf4j
 public class FileService {
-    FileRepository fileRepository;
-    FileMgmtRepository fileMgmtRepository;
-    FileMgmtMapper fileMgmtMapper;
-    public FileResponse uploadFile(MultipartFile file) throws IOException {
-        // Store file
+    final FileRepository fileRepository;
+    final FileMgmtRepository fileMgmtRepository;
+    final FileMgmtMapper fileMgmtMapper;
+    final MongoTemplate mongoTemplate;
+    final StorageQuotaService storageQuotaService;
+    final MeterRegistry meterRegistry;
 
-        var fileInfo = fileRepository.store(file);
+    @Value("${app.file.dedup-enabled:false}")
+    boolean dedupEnabled;
 
-        // Create file management info
-        var filemgmt = fileMgmtMapper.toFileMgmt(fileInfo);
+    public FileResponse uploadFile(MultipartFile file) throws IOException {
         String userId = SecurityContextHolder.getContext().getAuthentication().getName();
-        filemgmt.setOwnerId(userId);
-        filemgmt =  fileMgmtRepository.save(filemgmt); // Return the appropriate response after uploading the file
+        // Dung lượng tính theo bản ghi (file trùng nội dung vẫn tính cho từng owner), giữ chỗ trước khi ghi đĩa
+        storageQuotaService.reserve(userId, file.getSize(), 1);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        FileInfo fileInfo;
+        try {
+            // Store file
+            fileInfo = dedupEnabled ? storeDeduplicated(file) : fileRepository.store(file);
+
+            // Create file management info
+            var filemgmt = fileMgmtMapper.toFileMgmt(fileInfo);
+            filemgmt.setOwnerId(userId);
+            filemgmt.setCreatedAt(Instant.now());
+            filemgmt =  fileMgmtRepository.save(filemgmt); // Return the appropriate response after uploading the file
+        } catch (IOException | RuntimeException e) {
+            storageQuotaService.release(userId, file.getSize(), 1);
+            sample.stop(meterRegistry.timer("upload.batch", "path", "local", "outcome", "failure"));
+            throw e;
+        }
+        sample.stop(meterRegistry.timer("upload.batch", "path", "local", "outcome", "success"));
         return FileResponse.builder()
                 .originalFileName(file.getOriginalFilename())
                 .url(fileInfo.getUrl())
@@ -45,6 +80,125 @@ public class FileService {
     public FileData downloadFile(String fileName) throws IOException {
         var fileMgmt = fileMgmtRepository.findById(fileName).orElseThrow(()-> new AppException(ErrorCode.USER_NOT_FOUND));
         var resource = fileRepository.read(fileMgmt);
-        return new FileData(fileMgmt.getContentType(),resource);
+        return new FileData(fileMgmt.getContentType(), resource,
+                resource.contentLength(), fileMgmt.getMd5Checksum(), resource.lastModified());
+    }
+
+    /**
+     * Xoá file của chính người dùng; file dùng chung blob chỉ xoá blob khi không còn bản ghi nào trỏ tới
+     */
+    public void deleteFile(String fileName) throws IOException {
+        var fileMgmt = fileMgmtRepository.findById(fileName).orElseThrow(() -> new AppException(ErrorCode.FILE_NOT_FOUND));
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        if (!userId.equals(fileMgmt.getOwnerId())) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+
+        removeStoredFile(fileMgmt);
+    }
+
+    /**
+     * Xoá file của ownerId theo tên (dùng cho job xoá nền, chạy ngoài request nên chủ sở hữu được truyền vào).
+     * Trả về false nếu không có bản ghi hoặc file thuộc người khác, để không lộ file nào đang tồn tại.
+     */
+    public boolean deleteStoredFile(String ownerId, String fileName) throws IOException {
+        var fileMgmt = fileMgmtRepository.findById(fileName).orElse(null);
+        if (fileMgmt == null || !ownerId.equals(fileMgmt.getOwnerId())) {
+            return false;
+        }
+        removeStoredFile(fileMgmt);
+        return true;
+    }
+
+    private void removeStoredFile(FileMgmt fileMgmt) throws IOException {
+        fileMgmtRepository.delete(fileMgmt);
+        storageQuotaService.record(fileMgmt.getOwnerId(), -fileMgmt.getSize(), -1);
+        if (fileMgmt.getBlobId() == null) {
+            fileRepository.delete(Path.of(fileMgmt.getPath()));
+        } else {
+            releaseBlob(fileMgmt.getBlobId());
+        }
+    }
+
+    /**
+     * Lưu theo nội dung: blob được định danh bằng SHA-256, upload trùng chỉ tăng refCount và bỏ file tạm.
+     * refCount chỉ đổi bằng $inc trên file_blob nên đúng cả khi nhiều instance dùng chung MongoDB/thư mục lưu trữ.
+     */
+    private FileInfo storeDeduplicated(MultipartFile file) throws IOException {
+        FileRepository.StagedFile staged = fileRepository.stage(file, true);
+        String sha256 = staged.sha256Checksum();
+
+        FileBlob blob;
+        try {
+            // Tạo mới thì nhận đường dẫn riêng cho lần tạo này (xem releaseBlob)
+            blob = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(sha256)),
+                    new Update()
+                            .inc("refCount", 1)
+                            .setOnInsert("path", fileRepository.blobPath(sha256, UUID.randomUUID().toString()).toString())
+                            .setOnInsert("size", staged.size())
+                            .setOnInsert("md5Checksum", staged.md5Checksum())
+                            .setOnInsert("createdAt", Instant.now()),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    FileBlob.class);
+        } catch (RuntimeException e) {
+            fileRepository.discard(staged);
+            throw e;
+        }
+
+        Path blobPath = Path.of(blob.getPath());
+        try {
+            if (Files.exists(blobPath)) {
+                fileRepository.discard(staged);
+                log.debug("Duplicate upload of blob {}, refCount={}", sha256, blob.getRefCount());
+            } else {
+                // Blob mới, hoặc file trên đĩa bị mất: ghi từ bản vừa upload
+                fileRepository.commit(staged, blobPath);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Upload trùng khác vừa ghi cùng nội dung vào đúng vị trí này
+            log.debug("Blob {} written concurrently", sha256);
+        } catch (IOException | RuntimeException e) {
+            releaseBlob(sha256);
+            throw e;
+        }
+
+        String fileName = fileRepository.newFileName(file);
+        return FileInfo.builder()
+                .name(fileName)
+                .size(staged.size())
+                .contentType(file.getContentType())
+                .md5Checksum(staged.md5Checksum())
+                .sha256Checksum(sha256)
+                .blobId(sha256)
+                .path(blobPath.toString())
+                .url(fileRepository.toUrl(fileName))
+                .build();
+    }
+
+    /**
+     * Giảm refCount; về 0 thì xoá bản ghi blob (chỉ khi refCount vẫn <= 0) rồi mới xoá file.
+     * Upload tăng lại refCount trước khi bản ghi bị xoá thì giữ blob; sau đó thì tạo bản ghi mới với đường dẫn mới,
+     * nên file bị xoá ở đây không bao giờ là file mà bản ghi còn sống trỏ tới.
+     */
+    private void releaseBlob(String blobId) throws IOException {
+        FileBlob blob = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(blobId)),
+                new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                FileBlob.class);
+        if (blob == null) {
+            log.warn("Blob {} already removed", blobId);
+            return;
+        }
+        if (blob.getRefCount() > 0) {
+            return;
+        }
+        DeleteResult removed = mongoTemplate.remove(
+                Query.query(Criteria.where("_id").is(blobId).and("refCount").lte(0)), FileBlob.class);
+        if (removed.getDeletedCount() > 0) {
+            fileRepository.delete(Path.of(blob.getPath()));
+            log.debug("Blob {} has no more references, removed", blobId);
+        }
     }
 }
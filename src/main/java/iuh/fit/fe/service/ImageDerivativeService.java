@@ -0,0 +1,133 @@
+package iuh.fit.fe.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Sinh ảnh phái sinh (thumbnail theo các width cấu hình) cho ảnh upload, chạy trên imageWorkerExecutor.
+ * Key phái sinh đặt cạnh ảnh gốc: "a/b_20250101_120000.png" -> "a/b_20250101_120000_w320.jpg".
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class ImageDerivativeService {
+    final ImageTranscoder imageTranscoder;
+    final ExecutorService imageWorkerExecutor;
+
+    @Value("${aws.s3.derivatives.enabled:true}")
+    boolean enabled;
+
+    @Value("${aws.s3.derivatives.widths:320,640,1280}")
+    List<Integer> widths;
+
+    @Value("${aws.s3.derivatives.format:jpeg}")
+    String format;
+
+    @Value("${aws.s3.derivatives.quality:0.82}")
+    float quality;
+
+    public record Derivative(int width, String extension, String contentType, byte[] data) {
+        public String label() {
+            return "w" + width;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        widths = widths.stream().filter(w -> w > 0).distinct().sorted().toList();
+        if (!imageTranscoder.canEncode(format)) {
+            log.warn("No ImageIO writer for derivative format '{}', falling back to jpeg", format);
+            format = "jpeg";
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && !widths.isEmpty();
+    }
+
+    /**
+     * Sinh toàn bộ derivative của một ảnh trên pool xử lý ảnh.
+     * Pool đầy, file không phải ảnh hoặc decode lỗi thì trả về danh sách rỗng (ảnh gốc vẫn dùng được).
+     */
+    public CompletableFuture<List<Derivative>> render(MultipartFile file) {
+        if (!isEnabled() || file.getContentType() == null || !file.getContentType().startsWith("image/")) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> renderNow(file), imageWorkerExecutor)
+                    .exceptionally(e -> {
+                        log.warn("Failed to render derivatives for {}: {}", file.getOriginalFilename(), e.getMessage());
+                        return List.of();
+                    });
+        } catch (RejectedExecutionException e) {
+            log.warn("Image worker pool saturated, skipping derivatives for {}", file.getOriginalFilename());
+            return CompletableFuture.completedFuture(List.of());
+        }
+    }
+
+    public String keyFor(String originalKey, Derivative derivative) {
+        int dot = originalKey.lastIndexOf('.');
+        int slash = originalKey.lastIndexOf('/');
+        String base = dot > slash ? originalKey.substring(0, dot) : originalKey;
+        return base + "_" + derivative.label() + "." + derivative.extension();
+    }
+
+    /**
+     * Key của mọi derivative có thể đã sinh cho ảnh gốc theo cấu hình hiện tại (để xoá kèm ảnh gốc)
+     */
+    public List<String> keysFor(String originalKey) {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        String extension = "jpeg".equals(format) ? "jpg" : format;
+        return widths.stream()
+                .map(width -> keyFor(originalKey, new Derivative(width, extension, null, null)))
+                .toList();
+    }
+
+    private List<Derivative> renderNow(MultipartFile file) {
+        try {
+            BufferedImage source;
+            try (InputStream in = file.getInputStream()) {
+                source = imageTranscoder.decode(in, widths.get(widths.size() - 1));
+            }
+            if (source == null) {
+                return List.of();
+            }
+
+            String extension = "jpeg".equals(format) ? "jpg" : format;
+            List<Derivative> derivatives = new ArrayList<>(widths.size());
+            // Thu nhỏ từ width lớn xuống nhỏ, mỗi bước dùng lại kết quả trước đó
+            BufferedImage current = source;
+            for (int i = widths.size() - 1; i >= 0; i--) {
+                int width = widths.get(i);
+                if (width >= source.getWidth()) {
+                    continue; // không phóng to
+                }
+                current = imageTranscoder.scaleToWidth(current, width);
+                derivatives.add(new Derivative(width, extension, "image/" + format,
+                        imageTranscoder.encode(current, format, quality)));
+            }
+            return derivatives.reversed();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package iuh.fit.fe.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Decode / resize / encode ảnh bằng ImageIO của JDK.
+ * Metadata (EXIF, ICC...) không được ghi lại khi encode.
+ */
+@Service
+@Slf4j
+public class ImageTranscoder {
+
+    /**
+     * Decode ảnh, dùng subsampling của reader để không phải giải mã full độ phân giải
+     * khi ảnh gốc lớn hơn nhiều so với minWidth. Trả về null nếu không phải định dạng ảnh ImageIO đọc được.
+     */
+    public BufferedImage decode(InputStream in, int minWidth) throws IOException {
+        return decode(in, (width, height) -> width / Math.max(1, minWidth));
+    }
+
+    /**
+     * Như decode(in, minWidth) nhưng theo cạnh dài: ảnh giải mã vẫn có cạnh dài >= maxEdge (nếu ảnh gốc đủ lớn)
+     */
+    public BufferedImage decodeForMaxEdge(InputStream in, int maxEdge) throws IOException {
+        return decode(in, (width, height) -> Math.max(width, height) / Math.max(1, maxEdge));
+    }
+
+    private BufferedImage decode(InputStream in, IntBinaryOperator subsampling) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = Math.max(1, subsampling.applyAsInt(reader.getWidth(0), reader.getHeight(0)));
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Thu nhỏ về đúng width (giữ tỉ lệ), giảm một nửa mỗi bước để tránh răng cưa khi tỉ lệ thu lớn.
+     * Kết quả là ảnh RGB, vùng trong suốt được phủ nền trắng.
+     */
+    public BufferedImage scaleToWidth(BufferedImage source, int width) {
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            current = draw(current, w, h);
+        } while (w != width || h != height);
+        return current;
+    }
+
+    /**
+     * Thu nhỏ để cạnh dài không vượt maxEdge; ảnh đã đủ nhỏ chỉ được chuyển sang RGB
+     */
+    public BufferedImage scaleToFit(BufferedImage source, int maxEdge) {
+        int longEdge = Math.max(source.getWidth(), source.getHeight());
+        if (longEdge <= maxEdge) {
+            return source.getType() == BufferedImage.TYPE_INT_RGB
+                    ? source
+                    : draw(source, source.getWidth(), source.getHeight());
+        }
+        int width = Math.max(1, (int) Math.round((double) source.getWidth() * maxEdge / longEdge));
+        return scaleToWidth(source, width);
+    }
+
+    public boolean canEncode(String format) {
+        return ImageIO.getImageWritersByFormatName(format).hasNext();
+    }
+
+    /**
+     * Encode với chất lượng nén quality (0..1) nếu writer hỗ trợ
+     */
+    public byte[] encode(BufferedImage image, String format, float quality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for format " + format);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes().length > 0) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
@@ -1,8 +1,11 @@
 package iuh.fit.fe.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import iuh.fit.fe.dto.ImageValidationResult;
 import iuh.fit.fe.exception.AppException;
 import iuh.fit.fe.exception.ErrorCode;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -11,12 +14,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.AbortedException;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
 import software.amazon.awssdk.services.rekognition.model.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 @Service
 @Slf4j
@@ -25,26 +32,57 @@ import java.util.stream.Collectors;
 public class ImageValidationService {
 
     final RekognitionClient rekognitionClient;
+    final RekognitionGuard rekognitionGuard;
+    final ModerationPolicyService moderationPolicyService;
+    final ExecutorService moderationExecutor;
+    final ModerationVerdictCache moderationVerdictCache;
+    final ModerationImagePreprocessor moderationImagePreprocessor;
+    final MeterRegistry meterRegistry;
 
-    @Value("${aws.rekognition.confidence-threshold:80.0}")
-    Float confidenceThreshold;
+    @Value("${aws.rekognition.max-concurrency:8}")
+    int maxConcurrency;
 
-    // Các nhãn bị cấm
-    private static final Set<String> BLOCKED_LABELS = new HashSet<>(Arrays.asList(
-            "Explicit Nudity", "Nudity", "Graphic Male Nudity", "Graphic Female Nudity",
-            "Sexual Activity", "Illustrated Explicit Nudity", "Adult Toys",
-            "Violence", "Graphic Violence", "Physical Violence", "Weapon Violence",
-            "Weapons", "Self Injury", "Emaciated Bodies", "Corpses", "Hanging",
-            "Visually Disturbing", "Explosions And Blasts"
-    ));
+    // Rekognition không khả dụng: fail-fast trả MODERATION_UNAVAILABLE, review nhận ảnh và kiểm duyệt lại sau
+    @Value("${aws.rekognition.fallback:fail-fast}")
+    FallbackPolicy fallback;
+
+    Semaphore moderationPermits;
+
+    // Lời gọi Rekognition đang chạy theo digest nội dung: request trùng ảnh chờ chung một kết quả
+    final Map<String, CompletableFuture<List<ModerationLabel>>> inFlight = new ConcurrentHashMap<>();
+    Counter coalescedCalls;
+
+    private static final long CANCEL_AWAIT_SECONDS = 10;
+
+    public enum FallbackPolicy {
+        FAIL_FAST, REVIEW
+    }
+
+    @PostConstruct
+    void init() {
+        moderationPermits = new Semaphore(Math.max(1, maxConcurrency));
+        coalescedCalls = Counter.builder("moderation.coalesced")
+                .description("Moderation requests served by an identical in-flight Rekognition call")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chuẩn hoá category từ request (trống = default)
+     * @throws AppException MODERATION_CATEGORY_INVALID nếu chính sách kiểm duyệt không có category này
+     */
+    public String resolveCategory(String category) {
+        return moderationPolicyService.resolveCategory(category);
+    }
 
     /**
      * Kiểm tra tính hợp lệ của ảnh dựa trên nội dung
      * @param file File ảnh cần kiểm tra
+     * @param category category của chính sách kiểm duyệt (default, seller, avatar, review...)
+     * @return false nếu ảnh được nhận tạm vì Rekognition không khả dụng (fallback = review), cần kiểm duyệt lại
      * @throws AppException nếu ảnh chứa nội dung không phù hợp
      * @throws IOException nếu có lỗi đọc file
      */
-    public void validateImage(MultipartFile file) throws IOException {
+    public boolean validateImage(MultipartFile file, String category) throws IOException {
         log.info("Validating image: {}", file.getOriginalFilename());
 
         // Kiểm tra xem có phải file ảnh không
@@ -54,41 +92,29 @@ public class ImageValidationService {
 
         try {
             // Detect moderation labels
-            DetectModerationLabelsResponse moderationResponse = detectModerationLabels(file);
+            List<ModerationLabel> moderationLabels = detectModerationLabels(file);
 
             // Log response để debug
             log.debug("Rekognition response for {}: {} labels found",
-                    file.getOriginalFilename(),
-                    moderationResponse.moderationLabels() != null ? moderationResponse.moderationLabels().size() : 0);
+                    file.getOriginalFilename(), moderationLabels.size());
 
             // Kiểm tra nếu không có labels
-            if (moderationResponse.moderationLabels() == null || moderationResponse.moderationLabels().isEmpty()) {
+            if (moderationLabels.isEmpty()) {
                 log.info("Image validation passed (no moderation labels): {}", file.getOriginalFilename());
-                return;
+                return true;
             }
 
             // Kiểm tra các nhãn nguy hiểm
-            List<ModerationLabel> unsafeLabels = moderationResponse.moderationLabels().stream()
-                    .filter(label -> label.confidence() >= confidenceThreshold)
-                    .filter(label -> {
-                        String labelName = label.name();
-                        String parentName = label.parentName();
-                        return BLOCKED_LABELS.contains(labelName) ||
-                                (parentName != null && BLOCKED_LABELS.contains(parentName));
-                    })
-                    .collect(Collectors.toList());
-
-            if (!unsafeLabels.isEmpty()) {
-                String reasons = unsafeLabels.stream()
-                        .map(label -> String.format("%s (%.2f%%)", label.name(), label.confidence()))
-                        .collect(Collectors.joining(", "));
-                log.warn("Image rejected - File: {}, Reasons: {}", file.getOriginalFilename(), reasons);
-                throw new AppException(ErrorCode.IMAGE_CONTENT_NOT_ALLOWED);
-            }
+            rejectIfUnsafe(file.getOriginalFilename(), category, moderationLabels);
 
 //            log.info("Image validation passed: {}", file.getOriginalFilename());
+            return true;
 
         } catch (AppException e) {
+            if (deferrable(e)) {
+                log.warn("Moderation unavailable, accepting {} for later review", file.getOriginalFilename());
+                return false;
+            }
             throw e; // Re-throw validation errors
         } catch (RekognitionException e) {
             log.error("AWS Rekognition error for file {}: {}", file.getOriginalFilename(), e.getMessage());
@@ -99,107 +125,346 @@ public class ImageValidationService {
         }
     }
 
-    public List<ImageValidationResult> validateImagesDetailed(List<MultipartFile> files) throws IOException {
+    public List<ImageValidationResult> validateImagesDetailed(List<MultipartFile> files, String category) throws IOException {
         if (files == null || files.isEmpty()) {
             throw new AppException(ErrorCode.FILE_NOT_VALID);
         }
+        String resolved = resolveCategory(category);
 
-        List<ImageValidationResult> results = new ArrayList<>();
-
+        // Gửi song song từng ảnh, giữ nguyên thứ tự đầu vào khi gom kết quả
+        List<Future<ImageValidationResult>> futures = new ArrayList<>(files.size());
         for (int i = 0; i < files.size(); i++) {
-            MultipartFile f = files.get(i);
-            String fn = f != null ? f.getOriginalFilename() : "(null)";
+            final int index = i;
+            final MultipartFile f = files.get(i);
+            futures.add(moderationExecutor.submit(() -> validateOneDetailed(index, f, resolved)));
+        }
+
+        List<ImageValidationResult> results = new ArrayList<>(files.size());
+        try {
+            for (Future<ImageValidationResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        } catch (ExecutionException e) {
+            // validateOneDetailed tự bắt lỗi nên nhánh này gần như không xảy ra
+            futures.forEach(future -> future.cancel(true));
+            log.error("Unexpected error validating images: {}", e.getCause().getMessage(), e.getCause());
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        }
+
+        return results;
+    }
+
+    private ImageValidationResult validateOneDetailed(int i, MultipartFile f, String category) {
+        String fn = f != null ? f.getOriginalFilename() : "(null)";
+
+        // check định dạng trước
+        if (f == null || !isImageFile(f)) {
+            return ImageValidationResult.builder()
+                    .index(i)
+                    .position(i + 1)
+                    .filename(fn)
+                    .passed(false)
+                    .reason("không phải file ảnh hoặc file rỗng")
+                    .blockedLabels(List.of())
+                    .build();
+        }
 
-            // check định dạng trước
-            if (f == null || !isImageFile(f)) {
-                results.add(ImageValidationResult.builder()
+        try {
+            // dùng lại logic trong validateImage(...) nhưng thay vì throw ở đây
+            // ta tự kiểm tra và tạo result
+            List<ModerationLabel> labels = detectModerationLabels(f);
+
+            List<ModerationLabel> unsafe = violations(category, labels);
+
+            if (unsafe.isEmpty()) {
+                return ImageValidationResult.builder()
                         .index(i)
                         .position(i + 1)
                         .filename(fn)
-                        .passed(false)
-                        .reason("không phải file ảnh hoặc file rỗng")
+                        .passed(true)
+                        .reason(null)
                         .blockedLabels(List.of())
-                        .build());
-                continue;
+                        .build();
             }
 
-            try {
-                // dùng lại logic trong validateImage(...) nhưng thay vì throw ở đây
-                // ta tự kiểm tra và tạo result
-                DetectModerationLabelsResponse resp = detectModerationLabels(f);
-                List<ModerationLabel> labels = resp.moderationLabels() != null
-                        ? resp.moderationLabels() : List.of();
-
-                // lọc theo ngưỡng và BLOCKED_LABELS
-                List<ModerationLabel> unsafe = labels.stream()
-                        .filter(l -> l.confidence() >= confidenceThreshold)
-                        .filter(l -> BLOCKED_LABELS.contains(l.name())
-                                || (l.parentName() != null && BLOCKED_LABELS.contains(l.parentName())))
-                        .toList();
-
-                if (unsafe.isEmpty()) {
-                    results.add(ImageValidationResult.builder()
-                            .index(i)
-                            .position(i + 1)
-                            .filename(fn)
-                            .passed(true)
-                            .reason(null)
-                            .blockedLabels(List.of())
-                            .build());
-                } else {
-                    // gom lý do
-                    String reason = unsafe.stream()
-                            .map(l -> String.format("%s (%.2f%%)", l.name(), l.confidence()))
-                            .collect(Collectors.joining(", "));
-
-                    results.add(ImageValidationResult.builder()
-                            .index(i)
-                            .position(i + 1)
-                            .filename(fn)
-                            .passed(false)
-                            .reason(reason)
-                            .blockedLabels(unsafe.stream().map(ModerationLabel::name).distinct().toList())
-                            .build());
+            return ImageValidationResult.builder()
+                    .index(i)
+                    .position(i + 1)
+                    .filename(fn)
+                    .passed(false)
+                    .reason(ModerationPolicy.describe(unsafe))
+                    .blockedLabels(unsafe.stream().map(ModerationLabel::name).distinct().toList())
+                    .build();
+
+        } catch (AppException e) {
+            // MODERATION_UNAVAILABLE: chỉ kiểm tra, không lưu gì nên không có gì để kiểm duyệt lại sau
+            return ImageValidationResult.builder()
+                    .index(i)
+                    .position(i + 1)
+                    .filename(fn)
+                    .passed(false)
+                    .reason(e.getErrorCode().getMessage())
+                    .blockedLabels(List.of())
+                    .build();
+        } catch (RekognitionException e) {
+            log.error("Rekognition error for {}: {}", fn, e.getMessage());
+            return ImageValidationResult.builder()
+                    .index(i)
+                    .position(i + 1)
+                    .filename(fn)
+                    .passed(false)
+                    .reason("rekognition error: " + e.getMessage())
+                    .blockedLabels(List.of())
+                    .build();
+        } catch (Exception e) {
+            log.error("Unexpected error validating {}: {}", fn, e.getMessage(), e);
+            return ImageValidationResult.builder()
+                    .index(i)
+                    .position(i + 1)
+                    .filename(fn)
+                    .passed(false)
+                    .reason("unexpected error: " + e.getMessage())
+                    .blockedLabels(List.of())
+                    .build();
+        }
+    }
+
+    // Đánh giá theo chính sách đang dùng (ModerationPolicyService có thể thay bản mới bất cứ lúc nào)
+    private List<ModerationLabel> violations(String category, List<ModerationLabel> labels) {
+        List<ModerationLabel> unsafe = moderationPolicyService.violations(category, labels);
+        recordDecision(unsafe);
+        return unsafe;
+    }
+
+    // moderation.decisions theo kết quả; moderation.rejections theo từng nhãn gây từ chối
+    private void recordDecision(List<ModerationLabel> unsafe) {
+        Counter.builder("moderation.decisions")
+                .tag("outcome", unsafe.isEmpty() ? "passed" : "rejected")
+                .register(meterRegistry)
+                .increment();
+        unsafe.stream().map(ModerationLabel::name).distinct().forEach(label -> Counter.builder("moderation.rejections")
+                .tag("label", label)
+                .register(meterRegistry)
+                .increment());
+    }
+
+    private void rejectIfUnsafe(String name, String category, List<ModerationLabel> labels) {
+        List<ModerationLabel> unsafe = violations(category, labels);
+        if (!unsafe.isEmpty()) {
+            log.warn("Image rejected - File: {}, Category: {}, Reasons: {}", name, category, ModerationPolicy.describe(unsafe));
+            throw new AppException(ErrorCode.IMAGE_CONTENT_NOT_ALLOWED);
+        }
+    }
+
+    /**
+     * Kiểm duyệt ảnh đã nằm trên S3 bằng tham chiếu Image.s3Object (Rekognition tự đọc object,
+     * service không phải tải bytes). Chạy song song như validateImages, dừng ở ảnh bị từ chối đầu tiên.
+     * @return vị trí các ảnh được nhận tạm chờ kiểm duyệt lại (fallback = review)
+     */
+    public Set<Integer> validateS3Images(String bucket, List<String> keys, String category) {
+        Set<Integer> deferred = ConcurrentHashMap.newKeySet();
+        List<Future<Void>> futures = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final int index = i;
+            final String key = keys.get(i);
+            futures.add(moderationExecutor.submit(bounded(() -> {
+                try {
+                    reviewS3Image(bucket, key, category);
+                } catch (AppException e) {
+                    if (!deferrable(e)) {
+                        throw e;
+                    }
+                    log.warn("Moderation unavailable, accepting s3://{}/{} for later review", bucket, key);
+                    deferred.add(index);
                 }
+                return null;
+            })));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof AppException appException) {
+                throw appException;
+            }
+            log.error("Unexpected error validating S3 images: {}", e.getCause().getMessage(), e.getCause());
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        }
+        return deferred;
+    }
 
-            } catch (RekognitionException e) {
-                log.error("Rekognition error for {}: {}", fn, e.getMessage());
-                results.add(ImageValidationResult.builder()
-                        .index(i)
-                        .position(i + 1)
-                        .filename(fn)
-                        .passed(false)
-                        .reason("rekognition error: " + e.getMessage())
-                        .blockedLabels(List.of())
-                        .build());
-            } catch (Exception e) {
-                log.error("Unexpected error validating {}: {}", fn, e.getMessage(), e);
-                results.add(ImageValidationResult.builder()
-                        .index(i)
-                        .position(i + 1)
-                        .filename(fn)
-                        .passed(false)
-                        .reason("unexpected error: " + e.getMessage())
-                        .blockedLabels(List.of())
-                        .build());
+    /**
+     * Kiểm duyệt song song từng ảnh trên S3 độc lập với nhau (không dừng ở ảnh bị từ chối, không áp dụng fallback).
+     * @return key -> lỗi (IMAGE_CONTENT_NOT_ALLOWED, FILE_NOT_VALID, MODERATION_UNAVAILABLE, MODERATION_SOURCE_UNREADABLE);
+     * key không có trong map là ảnh đạt
+     */
+    public Map<String, ErrorCode> reviewS3Images(String bucket, List<String> keys, String category) {
+        Map<String, ErrorCode> failed = new ConcurrentHashMap<>();
+        List<Future<Void>> futures = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            futures.add(moderationExecutor.submit(bounded(() -> {
+                try {
+                    reviewS3Image(bucket, key, category);
+                } catch (AppException e) {
+                    failed.put(key, e.getErrorCode());
+                } catch (RuntimeException e) {
+                    // Lỗi không rõ nguyên nhân coi như tạm thời để nơi gọi thử lại
+                    log.error("Unexpected error reviewing s3://{}/{}: {}", bucket, key, e.getMessage(), e);
+                    failed.put(key, ErrorCode.MODERATION_UNAVAILABLE);
+                }
+                return null;
+            })));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed.put(keys.get(i), ErrorCode.MODERATION_UNAVAILABLE);
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new AppException(ErrorCode.MODERATION_UNAVAILABLE);
             }
         }
+        return failed;
+    }
 
-        return results;
+    /**
+     * Kiểm duyệt một ảnh trên S3, không áp dụng fallback: Rekognition không khả dụng thì ném MODERATION_UNAVAILABLE.
+     * Chỉ ảnh hỏng hoặc quá lớn mới là FILE_NOT_VALID; lỗi 4xx khác (object không tồn tại, AccessDenied, IAM,
+     * bucket policy, KMS...) không nói gì về ảnh nên là MODERATION_SOURCE_UNREADABLE: chỉ riêng ảnh này lỗi,
+     * nơi gọi giữ lại để thử sau nhưng không coi Rekognition là không khả dụng.
+     */
+    public void reviewS3Image(String bucket, String key, String category) {
+        try {
+            DetectModerationLabelsRequest request = DetectModerationLabelsRequest.builder()
+                    .image(Image.builder()
+                            .s3Object(S3Object.builder().bucket(bucket).name(key).build())
+                            .build())
+                    .minConfidence(moderationPolicyService.current().minConfidence())
+                    .build();
+            DetectModerationLabelsResponse response =
+                    rekognitionGuard.call(() -> rekognitionClient.detectModerationLabels(request));
+            rejectIfUnsafe(key, category, response.moderationLabels() != null ? response.moderationLabels() : List.of());
+        } catch (InvalidImageFormatException | ImageTooLargeException e) {
+            log.warn("Invalid image s3://{}/{}: {}", bucket, key, e.getMessage());
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        } catch (RekognitionException e) {
+            log.error("AWS Rekognition could not read s3://{}/{}: {}", bucket, key, e.getMessage());
+            throw new AppException(ErrorCode.MODERATION_SOURCE_UNREADABLE);
+        }
     }
 
     /**
-     * Gọi AWS Rekognition để phát hiện nội dung không phù hợp
+     * true nếu lỗi kiểm duyệt là do chính ảnh (nội dung bị cấm, ảnh hỏng/quá lớn) - chỉ khi đó mới được xoá ảnh
      */
-    private DetectModerationLabelsResponse detectModerationLabels(MultipartFile file) throws IOException {
-        DetectModerationLabelsRequest request = DetectModerationLabelsRequest.builder()
-                .image(Image.builder()
-                        .bytes(SdkBytes.fromByteArray(file.getBytes()))
-                        .build())
-                .minConfidence(confidenceThreshold)
-                .build();
+    public static boolean isImageRejection(ErrorCode errorCode) {
+        return errorCode == ErrorCode.IMAGE_CONTENT_NOT_ALLOWED || errorCode == ErrorCode.FILE_NOT_VALID;
+    }
+
+    /**
+     * Gọi AWS Rekognition để phát hiện nội dung không phù hợp.
+     * Ảnh trùng nội dung (cùng SHA-256) được trả từ ModerationVerdictCache, không gọi lại Rekognition;
+     * request đồng thời cho cùng nội dung khi cache chưa có dùng chung một lời gọi (single-flight).
+     * Digest được tính theo stream (trên bản gốc); khi cache miss ảnh được thu nhỏ/chuyển định dạng
+     * bởi ModerationImagePreprocessor trước khi gửi.
+     * Nhãn được lấy ở ngưỡng thấp nhất của chính sách nên một kết quả dùng được cho mọi category.
+     */
+    private List<ModerationLabel> detectModerationLabels(MultipartFile file) throws IOException {
+        String digest;
+        try (InputStream in = file.getInputStream()) {
+            digest = moderationVerdictCache.digest(in);
+        }
+        float threshold = moderationPolicyService.current().minConfidence();
+        String flightKey = digest + "@" + threshold;
+
+        while (true) {
+            CompletableFuture<List<ModerationLabel>> flight = new CompletableFuture<>();
+            CompletableFuture<List<ModerationLabel>> leader = inFlight.putIfAbsent(flightKey, flight);
+            if (leader == null) {
+                return lead(flightKey, flight, digest, threshold, file);
+            }
+            coalescedCalls.increment();
+            try {
+                return leader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for moderation of " + file.getOriginalFilename());
+            } catch (ExecutionException e) {
+                // Request dẫn đầu bị huỷ (không phải lỗi của ảnh): thử lại, có thể tự dẫn đầu
+                if (e.getCause() instanceof AbortedException) {
+                    continue;
+                }
+                if (e.getCause() instanceof UncheckedIOException ioException) {
+                    throw ioException.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
 
-        return rekognitionClient.detectModerationLabels(request);
+    private List<ModerationLabel> lead(String flightKey, CompletableFuture<List<ModerationLabel>> flight,
+                                       String digest, float threshold, MultipartFile file) throws IOException {
+        try {
+            List<ModerationLabel> labels = moderationVerdictCache.get(digest, threshold,
+                    () -> callRekognition(file, threshold));
+            flight.complete(labels);
+            return labels;
+        } catch (UncheckedIOException e) {
+            flight.completeExceptionally(e);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    // Chỉ request dẫn đầu giữ permit, nên request chờ kết quả chung không chiếm chỗ của lời gọi khác
+    private List<ModerationLabel> callRekognition(MultipartFile file, float threshold) {
+        try {
+            moderationPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while waiting for a moderation permit").build();
+        }
+        try {
+            DetectModerationLabelsRequest request = DetectModerationLabelsRequest.builder()
+                    .image(Image.builder()
+                            // mảng byte không bị dùng lại ở đâu khác nên không cần SDK copy thêm
+                            .bytes(SdkBytes.fromByteArrayUnsafe(preparePayload(file)))
+                            .build())
+                    .minConfidence(threshold)
+                    .build();
+
+            DetectModerationLabelsResponse response =
+                    rekognitionGuard.call(() -> rekognitionClient.detectModerationLabels(request));
+            return response.moderationLabels() != null ? response.moderationLabels() : List.of();
+        } finally {
+            moderationPermits.release();
+        }
+    }
+
+    private byte[] preparePayload(MultipartFile file) {
+        try {
+            return moderationImagePreprocessor.prepare(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -214,29 +479,121 @@ public class ImageValidationService {
     }
 
     /**
-     * Validate nhiều ảnh cùng lúc
+     * Validate nhiều ảnh cùng lúc (song song, tối đa max-concurrency lời gọi Rekognition).
+     * Dừng ở ảnh bị từ chối đầu tiên và huỷ các lời gọi còn lại.
+     * @return vị trí các ảnh được nhận tạm chờ kiểm duyệt lại (fallback = review)
      */
-    public void validateImages(List<MultipartFile> files) throws IOException {
+    public Set<Integer> validateImages(List<MultipartFile> files, String category) throws IOException {
+        return validateImages(files, category, (index, file) -> {});
+    }
+
+    /**
+     * Như validateImages(files, category), nhưng gọi onValidated ngay khi từng ảnh qua kiểm duyệt
+     * (trên luồng kiểm duyệt, sau khi đã trả permit Rekognition) để bước sau chạy chồng lên các ảnh còn lại.
+     * Khi hàm ném lỗi, mọi tác vụ (kể cả onValidated) đã dừng hẳn.
+     */
+    public Set<Integer> validateImages(List<MultipartFile> files, String category, ValidatedFileHandler onValidated)
+            throws IOException {
         if (files == null || files.isEmpty()) {
             log.warn("No files to validate");
-            return;
+            return Set.of();
         }
+        Set<Integer> deferred = ConcurrentHashMap.newKeySet();
 
         log.info("Starting validation for {} file(s)", files.size());
-        int successCount = 0;
-
+        // Tác vụ xong (kể cả bị huỷ trước khi chạy) được đưa vào completed theo thứ tự hoàn thành
+        BlockingQueue<Future<MultipartFile>> completed = new LinkedBlockingQueue<>();
+        List<Future<MultipartFile>> futures = new ArrayList<>(files.size());
+        CountDownLatch finished = new CountDownLatch(files.size());
         for (int i = 0; i < files.size(); i++) {
-            MultipartFile file = files.get(i);
-            log.info("Validating file {}/{}: {}", i + 1, files.size(), file.getOriginalFilename());
-            try {
-                validateImage(file);
+            final int index = i;
+            final MultipartFile file = files.get(i);
+            FutureTask<MultipartFile> task = new FutureTask<>(() -> {
+                if (!validateImage(file, category)) {
+                    deferred.add(index);
+                }
+                onValidated.accept(index, file);
+                return file;
+            });
+            futures.add(task);
+            moderationExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    completed.add(task);
+                    finished.countDown();
+                }
+            });
+        }
+
+        int successCount = 0;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = completed.take().get();
                 successCount++;
-            } catch (AppException e) {
-                log.error("Validation failed for file {}: {}", file.getOriginalFilename(), e.getMessage());
-                throw e; // Stop at first failure
+                log.debug("Validated file {}/{}: {}", successCount, files.size(), file.getOriginalFilename());
+            }
+        } catch (ExecutionException e) {
+            cancelAndAwait(futures, finished); // Stop at first failure
+            Throwable cause = e.getCause();
+            if (cause instanceof AppException appException) {
+                log.error("Validation failed: {}", appException.getErrorCode().getMessage());
+                throw appException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
             }
+            if (cause instanceof RuntimeException runtimeException) {
+                // lỗi từ onValidated (vd: S3Exception) - để nơi gọi tự xử lý
+                throw runtimeException;
+            }
+            log.error("Unexpected error validating images: {}", cause.getMessage(), cause);
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
+        } catch (InterruptedException e) {
+            cancelAndAwait(futures, finished);
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.FILE_NOT_VALID);
         }
 
         log.info("Successfully validated {}/{} file(s)", successCount, files.size());
+        return deferred;
+    }
+
+    /**
+     * Huỷ các tác vụ còn lại và chờ chúng dừng hẳn, để nơi gọi có thể dọn dẹp an toàn
+     */
+    private void cancelAndAwait(List<? extends Future<?>> futures, CountDownLatch finished) {
+        futures.forEach(future -> future.cancel(true));
+        try {
+            if (!finished.await(CANCEL_AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for cancelled moderation tasks to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean deferrable(AppException e) {
+        return (e.getErrorCode() == ErrorCode.MODERATION_UNAVAILABLE
+                || e.getErrorCode() == ErrorCode.MODERATION_SOURCE_UNREADABLE) && fallback == FallbackPolicy.REVIEW;
+    }
+
+    /**
+     * Bọc tác vụ để giữ một permit trong suốt lời gọi Rekognition
+     */
+    private <T> Callable<T> bounded(Callable<T> task) {
+        return () -> {
+            moderationPermits.acquire();
+            try {
+                return task.call();
+            } finally {
+                moderationPermits.release();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface ValidatedFileHandler {
+        void accept(int index, MultipartFile file) throws IOException;
     }
-}
\ No newline at end of file
+}
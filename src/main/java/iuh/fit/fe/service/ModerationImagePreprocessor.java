@@ -0,0 +1,72 @@
+package iuh.fit.fe.service;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Chuẩn bị payload gửi Rekognition: thu nhỏ ảnh về cạnh dài tối đa max-edge rồi encode JPEG.
+ * Rekognition chỉ nhận JPEG/PNG và tối đa 5 MB inline, nên các định dạng khác (GIF, BMP, TIFF...)
+ * cũng được chuyển sang JPEG. Ảnh JPEG/PNG đủ nhỏ được gửi nguyên bản để khỏi tốn CPU.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class ModerationImagePreprocessor {
+    private static final Set<String> REKOGNITION_FORMATS = Set.of("image/jpeg", "image/jpg", "image/png");
+    // Giới hạn ảnh gửi trực tiếp (bytes) của DetectModerationLabels
+    private static final long REKOGNITION_MAX_BYTES = 5L * 1024 * 1024;
+
+    final ImageTranscoder imageTranscoder;
+
+    @Value("${aws.rekognition.preprocess.enabled:true}")
+    boolean enabled;
+
+    @Value("${aws.rekognition.preprocess.max-edge:1280}")
+    int maxEdge;
+
+    @Value("${aws.rekognition.preprocess.quality:0.85}")
+    float quality;
+
+    @Value("${aws.rekognition.preprocess.passthrough-max-bytes:262144}")
+    long passthroughMaxBytes;
+
+    /**
+     * Trả về bytes sẽ gửi cho Rekognition. Không decode được thì gửi nguyên bản để Rekognition tự báo lỗi.
+     */
+    public byte[] prepare(MultipartFile file) throws IOException {
+        boolean supported = file.getContentType() != null
+                && REKOGNITION_FORMATS.contains(file.getContentType().toLowerCase());
+        if (!enabled || (supported && file.getSize() <= passthroughMaxBytes)) {
+            return file.getBytes();
+        }
+
+        BufferedImage image;
+        try (InputStream in = file.getInputStream()) {
+            image = imageTranscoder.decodeForMaxEdge(in, maxEdge);
+        }
+        if (image == null) {
+            log.debug("Cannot decode {} ({}), sending original bytes", file.getOriginalFilename(), file.getContentType());
+            return file.getBytes();
+        }
+
+        byte[] payload = imageTranscoder.encode(imageTranscoder.scaleToFit(image, maxEdge), "jpeg", quality);
+        if (supported && file.getSize() <= Math.min(payload.length, REKOGNITION_MAX_BYTES)) {
+            // encode lại còn lớn hơn bản gốc (ảnh nhỏ, đã nén kỹ)
+            return file.getBytes();
+        }
+        log.debug("Moderation payload for {}: {} -> {} bytes",
+                file.getOriginalFilename(), file.getSize(), payload.length);
+        return payload;
+    }
+}
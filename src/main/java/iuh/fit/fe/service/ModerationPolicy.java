@@ -0,0 +1,220 @@
+package iuh.fit.fe.service;
+
+import software.amazon.awssdk.services.rekognition.model.ModerationLabel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chính sách kiểm duyệt đã biên dịch, immutable nên dùng chung giữa các luồng không cần khoá.
+ * Mỗi category (default, seller, avatar, review...) được biên dịch thành bảng nhãn -> ngưỡng confidence,
+ * ngưỡng đã được kế thừa sẵn theo cây nhãn cha/con; nhãn được cho phép mang ngưỡng vô cực.
+ * Đánh giá một nhãn tốn tối đa hai lần tra HashMap và không tạo object nào khi ảnh đạt.
+ */
+public final class ModerationPolicy {
+    public static final String DEFAULT_CATEGORY = "default";
+
+    private static final Float ALLOWED = Float.POSITIVE_INFINITY;
+
+    private final String version;
+    private final Map<String, Map<String, Float>> categories;
+    private final Map<String, Float> defaults;
+    private final float minConfidence;
+
+    /**
+     * Định nghĩa chính sách đọc từ file (aws.rekognition.policy.location).
+     * @param defaultThreshold ngưỡng cho nhãn trong block khi category không tự khai báo threshold
+     * @param hierarchy nhãn con -> nhãn cha; luật của nhãn cha áp dụng cho mọi nhãn con chưa có luật riêng
+     * @param categories luật theo category; mọi category kế thừa "default" rồi ghi đè
+     */
+    public record Definition(
+            String version, Float defaultThreshold, Map<String, String> hierarchy, Map<String, CategoryDefinition> categories) {}
+
+    /**
+     * @param block nhãn bị cấm ở ngưỡng threshold của category
+     * @param thresholds nhãn bị cấm với ngưỡng riêng
+     * @param allow nhãn được cho phép (kể cả khi nhãn cha bị cấm)
+     */
+    public record CategoryDefinition(
+            Float threshold, List<String> block, Map<String, Float> thresholds, List<String> allow) {}
+
+    private ModerationPolicy(String version, Map<String, Map<String, Float>> categories, float minConfidence) {
+        this.version = version;
+        this.categories = categories;
+        this.defaults = categories.get(DEFAULT_CATEGORY);
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Biên dịch định nghĩa thành bảng tra cứu
+     * @param fallbackThreshold dùng khi định nghĩa không có defaultThreshold
+     * @throws IllegalArgumentException nếu ngưỡng ngoài 0-100 hoặc cây nhãn có vòng
+     */
+    public static ModerationPolicy compile(Definition definition, float fallbackThreshold) {
+        Map<String, String> hierarchy = definition.hierarchy() != null ? definition.hierarchy() : Map.of();
+        checkAcyclic(hierarchy);
+        Map<String, CategoryDefinition> sources = new HashMap<>();
+        if (definition.categories() != null) {
+            definition.categories().forEach((name, category) -> sources.put(normalize(name), category));
+        }
+        CategoryDefinition base = sources.get(DEFAULT_CATEGORY);
+        float defaultThreshold = check(
+                definition.defaultThreshold() != null ? definition.defaultThreshold() : fallbackThreshold, "defaultThreshold");
+
+        Map<String, Map<String, Float>> compiled = new HashMap<>();
+        compiled.put(DEFAULT_CATEGORY, compileCategory(base, null, defaultThreshold, hierarchy));
+        sources.forEach((name, category) -> {
+            if (!DEFAULT_CATEGORY.equals(name)) {
+                compiled.put(name, compileCategory(base, category, defaultThreshold, hierarchy));
+            }
+        });
+
+        float minConfidence = defaultThreshold;
+        for (Map<String, Float> rules : compiled.values()) {
+            for (Float threshold : rules.values()) {
+                minConfidence = Math.min(minConfidence, threshold);
+            }
+        }
+        return new ModerationPolicy(definition.version(), Map.copyOf(compiled), minConfidence);
+    }
+
+    private static Map<String, Float> compileCategory(
+            CategoryDefinition base, CategoryDefinition category, float defaultThreshold, Map<String, String> hierarchy) {
+        // Nhãn kế thừa từ default lấy ngưỡng của category đang biên dịch
+        float threshold = category != null && category.threshold() != null
+                ? check(category.threshold(), "threshold")
+                : base != null && base.threshold() != null ? check(base.threshold(), "threshold") : defaultThreshold;
+        Map<String, Float> explicit = new HashMap<>();
+        apply(explicit, base, threshold);
+        apply(explicit, category, threshold);
+
+        // Kế thừa theo cây nhãn ngay lúc biên dịch: lúc đánh giá chỉ còn tra nhãn và nhãn cha trực tiếp
+        Set<String> names = new HashSet<>(explicit.keySet());
+        names.addAll(hierarchy.keySet());
+        Map<String, Float> rules = new HashMap<>();
+        for (String name : names) {
+            Float rule = inherited(name, explicit, hierarchy);
+            if (rule != null) {
+                rules.put(name, rule);
+            }
+        }
+        return Map.copyOf(rules);
+    }
+
+    private static void apply(Map<String, Float> explicit, CategoryDefinition category, float threshold) {
+        if (category == null) {
+            return;
+        }
+        if (category.block() != null) {
+            category.block().forEach(label -> explicit.put(label, threshold));
+        }
+        if (category.thresholds() != null) {
+            category.thresholds().forEach((label, value) -> explicit.put(label, check(value, label)));
+        }
+        if (category.allow() != null) {
+            category.allow().forEach(label -> explicit.put(label, ALLOWED));
+        }
+    }
+
+    private static Float inherited(String name, Map<String, Float> explicit, Map<String, String> hierarchy) {
+        for (String current = name; current != null; current = hierarchy.get(current)) {
+            Float rule = explicit.get(current);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // Kiểm tra trên cả cây, không chỉ trên đường tới nhãn có luật: vòng chứa nhãn bị cấm vẫn là định nghĩa lỗi
+    private static void checkAcyclic(Map<String, String> hierarchy) {
+        for (String name : hierarchy.keySet()) {
+            String current = name;
+            for (int depth = 0; current != null; depth++) {
+                if (depth > hierarchy.size()) {
+                    throw new IllegalArgumentException("Cycle in label hierarchy at '" + name + "'");
+                }
+                current = hierarchy.get(current);
+            }
+        }
+    }
+
+    private static float check(Float threshold, String field) {
+        if (threshold == null || !(threshold >= 0 && threshold <= 100)) {
+            throw new IllegalArgumentException("Threshold of '" + field + "' must be between 0 and 100: " + threshold);
+        }
+        return threshold;
+    }
+
+    public static String normalize(String category) {
+        return category == null || category.isBlank() ? DEFAULT_CATEGORY : category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public boolean hasCategory(String category) {
+        return categories.containsKey(category);
+    }
+
+    public Set<String> categories() {
+        return categories.keySet();
+    }
+
+    /**
+     * Ngưỡng thấp nhất trên mọi category, dùng làm MinConfidence khi gọi Rekognition
+     * để một kết quả (và verdict cache) dùng được cho mọi category
+     */
+    public float minConfidence() {
+        return minConfidence;
+    }
+
+    /**
+     * Các nhãn vi phạm chính sách của category; category không có trong chính sách dùng default.
+     * @return List.of() khi ảnh đạt
+     */
+    public List<ModerationLabel> violations(String category, List<ModerationLabel> labels) {
+        Map<String, Float> rules = categories.getOrDefault(category, defaults);
+        List<ModerationLabel> unsafe = null;
+        for (int i = 0, n = labels.size(); i < n; i++) {
+            ModerationLabel label = labels.get(i);
+            Float threshold = rules.get(label.name());
+            if (threshold == null && label.parentName() != null) {
+                threshold = rules.get(label.parentName());
+            }
+            if (threshold != null && label.confidence() != null && label.confidence() >= threshold) {
+                if (unsafe == null) {
+                    unsafe = new ArrayList<>(2);
+                }
+                unsafe.add(label);
+            }
+        }
+        return unsafe != null ? unsafe : List.of();
+    }
+
+    /**
+     * Lý do từ chối dạng "Nhãn (95.50%), Nhãn khác (81.00%)", chỉ dựng khi ảnh bị từ chối
+     */
+    public static String describe(List<ModerationLabel> unsafe) {
+        StringBuilder reason = new StringBuilder(unsafe.size() * 32);
+        for (int i = 0; i < unsafe.size(); i++) {
+            ModerationLabel label = unsafe.get(i);
+            if (i > 0) {
+                reason.append(", ");
+            }
+            long hundredths = Math.round(label.confidence() * 100.0);
+            reason.append(label.name()).append(" (").append(hundredths / 100).append('.');
+            if (hundredths % 100 < 10) {
+                reason.append('0');
+            }
+            reason.append(hundredths % 100).append("%)");
+        }
+        return reason.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package iuh.fit.fe.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.rekognition.model.ModerationLabel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Nạp chính sách kiểm duyệt (JSON, aws.rekognition.policy.location) và biên dịch thành ModerationPolicy.
+ * Scheduler kiểm tra lastModified của file; file đổi thì biên dịch lại và thay chính sách đang dùng bằng một lần set,
+ * request đang chạy vẫn dùng trọn bản cũ. File lỗi thì giữ nguyên chính sách hiện tại.
+ * Resource không có lastModified (classpath trong jar) chỉ được nạp một lần lúc khởi động.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class ModerationPolicyService {
+    final ResourceLoader resourceLoader;
+    final ObjectMapper objectMapper;
+    final MeterRegistry meterRegistry;
+
+    @Value("${aws.rekognition.policy.location:classpath:moderation-policy.json}")
+    String location;
+
+    // Ngưỡng mặc định khi file chính sách không khai báo defaultThreshold
+    @Value("${aws.rekognition.confidence-threshold:80.0}")
+    float confidenceThreshold;
+
+    final AtomicReference<ModerationPolicy> policy = new AtomicReference<>();
+    long loadedModified;
+
+    @PostConstruct
+    void init() throws IOException {
+        // Chính sách lỗi lúc khởi động thì dừng hẳn thay vì chạy không kiểm duyệt
+        loadedModified = lastModified(resourceLoader.getResource(location));
+        policy.set(load());
+        log.info("Loaded moderation policy {} from {} (categories {})",
+                policy.get().version(), location, policy.get().categories());
+    }
+
+    @Scheduled(fixedDelayString = "${aws.rekognition.policy.reload-interval-ms:30000}")
+    public synchronized void reload() {
+        long modified = lastModified(resourceLoader.getResource(location));
+        if (modified <= 0 || modified == loadedModified) {
+            return;
+        }
+        // Ghi nhận cả khi lỗi để không log lại cùng một file hỏng ở mỗi vòng
+        loadedModified = modified;
+        try {
+            ModerationPolicy next = load();
+            policy.set(next);
+            reloads("success");
+            log.info("Reloaded moderation policy {} from {} (categories {})", next.version(), location, next.categories());
+        } catch (IOException | RuntimeException e) {
+            reloads("failure");
+            log.error("Invalid moderation policy at {}, keeping {}: {}", location, policy.get().version(), e.getMessage());
+        }
+    }
+
+    public ModerationPolicy current() {
+        return policy.get();
+    }
+
+    /**
+     * Chuẩn hoá category từ request (trống = default)
+     * @throws AppException MODERATION_CATEGORY_INVALID nếu chính sách hiện tại không có category này
+     */
+    public String resolveCategory(String category) {
+        String normalized = ModerationPolicy.normalize(category);
+        if (!policy.get().hasCategory(normalized)) {
+            throw new AppException(ErrorCode.MODERATION_CATEGORY_INVALID);
+        }
+        return normalized;
+    }
+
+    public List<ModerationLabel> violations(String category, List<ModerationLabel> labels) {
+        return policy.get().violations(category, labels);
+    }
+
+    private ModerationPolicy load() throws IOException {
+        try (InputStream in = resourceLoader.getResource(location).getInputStream()) {
+            ModerationPolicy.Definition definition = objectMapper.readerFor(ModerationPolicy.Definition.class)
+                    .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValue(in);
+            return ModerationPolicy.compile(definition, confidenceThreshold);
+        }
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void reloads(String outcome) {
+        Counter.builder("moderation.policy.reloads")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -0,0 +1,171 @@
+package iuh.fit.fe.service;
+
+import iuh.fit.fe.dto.DeleteResult;
+import iuh.fit.fe.entity.ModerationReview;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.ModerationReviewRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kiểm duyệt lại các ảnh đã nhận khi Rekognition không khả dụng (aws.rekognition.fallback = review).
+ * Scheduler claim từng bản ghi moderation_review bằng findAndModify kèm lease (chạy được nhiều instance),
+ * kiểm duyệt bằng tham chiếu S3; ảnh bị từ chối bị xoá cùng các derivative.
+ * Vòng xử lý chỉ dừng khi chính Rekognition không khả dụng (mạch mở, throttle, lỗi 5xx), bản ghi được trả lại để lần sau làm tiếp.
+ * Lỗi riêng của một ảnh (không đọc được object) chỉ đẩy lùi bản ghi đó theo backoff; object không còn thì bỏ bản ghi.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class ModerationReviewService {
+    final ModerationReviewRepository moderationReviewRepository;
+    final MongoTemplate mongoTemplate;
+    final ImageValidationService imageValidationService;
+    final ImageDerivativeService imageDerivativeService;
+    final RekognitionGuard rekognitionGuard;
+    final S3Service s3Service;
+
+    @Value("${aws.bucketName}")
+    String bucketName;
+
+    @Value("${aws.rekognition.review.batch-size:50}")
+    int batchSize;
+
+    @Value("${aws.rekognition.review.lease-seconds:300}")
+    long leaseSeconds;
+
+    @Value("${aws.rekognition.review.max-attempts:5}")
+    int maxAttempts;
+
+    @Value("${aws.rekognition.review.base-backoff-seconds:30}")
+    long baseBackoffSeconds;
+
+    @Value("${aws.rekognition.review.max-backoff-seconds:3600}")
+    long maxBackoffSeconds;
+
+    @Scheduled(fixedDelayString = "${aws.rekognition.review.poll-interval-ms:10000}")
+    public void drain() {
+        for (int i = 0; i < batchSize && rekognitionGuard.isCallPermitted(); i++) {
+            ModerationReview review = claim();
+            if (review == null || !process(review)) {
+                return;
+            }
+        }
+    }
+
+    private ModerationReview claim() {
+        Instant now = Instant.now();
+        Query query = new Query(new Criteria().orOperator(
+                new Criteria().andOperator(
+                        Criteria.where("status").is(ModerationReview.Status.PENDING),
+                        new Criteria().orOperator(
+                                Criteria.where("nextAttemptAt").is(null),
+                                Criteria.where("nextAttemptAt").lte(now))),
+                Criteria.where("status").is(ModerationReview.Status.RUNNING).and("leaseUntil").lt(now)))
+                .with(Sort.by("createdAt"));
+        Update update = new Update()
+                .set("status", ModerationReview.Status.RUNNING)
+                .set("leaseUntil", now.plus(Duration.ofSeconds(leaseSeconds)))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), ModerationReview.class);
+    }
+
+    // false: Rekognition vẫn không khả dụng, dừng vòng này
+    private boolean process(ModerationReview review) {
+        String key = review.getId();
+        try {
+            imageValidationService.reviewS3Image(bucketName, key, ModerationPolicy.normalize(review.getCategory()));
+            complete(review, ModerationReview.Status.APPROVED, null);
+            log.info("Deferred moderation approved {}", key);
+        } catch (AppException e) {
+            if (ImageValidationService.isImageRejection(e.getErrorCode())) {
+                // IMAGE_CONTENT_NOT_ALLOWED hoặc ảnh hỏng/quá lớn: xử lý như khi bị từ chối lúc upload
+                reject(review, e.getErrorCode().getMessage());
+            } else if (e.getErrorCode() == ErrorCode.MODERATION_SOURCE_UNREADABLE) {
+                unreadable(review, e.getErrorCode().getMessage());
+            } else {
+                // Rekognition không khả dụng: không tính vào số lần thử vì lỗi không nằm ở ảnh, giữ PENDING
+                review.setAttempts(review.getAttempts() - 1);
+                release(review, e.getErrorCode().getMessage(), null);
+                return false;
+            }
+        } catch (RuntimeException e) {
+            log.error("Deferred moderation of {} failed: {}", key, e.getMessage(), e);
+            retryOrFail(review, e.getMessage());
+        }
+        return true;
+    }
+
+    // Object đã bị xoá (hoặc chưa bao giờ tới key chính thức) thì không còn gì để kiểm duyệt: bỏ bản ghi
+    private void unreadable(ModerationReview review, String reason) {
+        try {
+            if (!s3Service.missingKeys(List.of(review.getId())).isEmpty()) {
+                moderationReviewRepository.delete(review);
+                log.info("Dropped deferred moderation of {}: object no longer exists", review.getId());
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to check deferred moderation object {}: {}", review.getId(), e.getMessage());
+        }
+        retryOrFail(review, reason);
+    }
+
+    private void reject(ModerationReview review, String reason) {
+        List<String> keys = new ArrayList<>();
+        keys.add(review.getId());
+        keys.addAll(imageDerivativeService.keysFor(review.getId()));
+        DeleteResult result = s3Service.deleteKeys(keys);
+        if (!result.getFailed().isEmpty()) {
+            retryOrFail(review, "Failed to delete " + result.getFailed());
+            return;
+        }
+        complete(review, ModerationReview.Status.REJECTED, reason);
+        log.warn("Deferred moderation rejected {} (owner {}): {}", review.getId(), review.getOwner(), reason);
+    }
+
+    private void complete(ModerationReview review, ModerationReview.Status status, String reason) {
+        review.setStatus(status);
+        review.setReason(reason);
+        review.setLeaseUntil(null);
+        review.setCompletedAt(Instant.now());
+        moderationReviewRepository.save(review);
+    }
+
+    private void release(ModerationReview review, String reason, Instant nextAttemptAt) {
+        review.setStatus(ModerationReview.Status.PENDING);
+        review.setReason(reason);
+        review.setLeaseUntil(null);
+        review.setNextAttemptAt(nextAttemptAt);
+        moderationReviewRepository.save(review);
+    }
+
+    // Lỗi riêng của ảnh: thử lại sau base * 2^(attempts - 1) giây để bản ghi cũ nhất không chặn cả hàng đợi
+    private void retryOrFail(ModerationReview review, String error) {
+        if (review.getAttempts() >= maxAttempts) {
+            complete(review, ModerationReview.Status.FAILED, error);
+        } else {
+            long backoff = Math.min(maxBackoffSeconds,
+                    baseBackoffSeconds << Math.min(Math.max(review.getAttempts() - 1, 0), 20));
+            release(review, error, Instant.now().plusSeconds(backoff));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package iuh.fit.fe.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.fe.entity.ModerationVerdict;
+import iuh.fit.fe.repository.ModerationVerdictRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.rekognition.model.ModerationLabel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả DetectModerationLabels theo SHA-256 nội dung ảnh.
+ * Tầng 1: Caffeine (LRU + TTL) trong bộ nhớ. Tầng 2 (tuỳ chọn): collection moderation_verdict.
+ * Một kết quả tính ở ngưỡng T0 chỉ dùng lại được khi ngưỡng hiện tại >= T0,
+ * vì Rekognition đã bỏ các nhãn dưới T0.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class ModerationVerdictCache {
+    private static final int DIGEST_BUFFER_SIZE = 8192;
+
+    final ModerationVerdictRepository moderationVerdictRepository;
+    final MeterRegistry meterRegistry;
+
+    @Value("${aws.rekognition.verdict-cache.enabled:true}")
+    boolean enabled;
+
+    @Value("${aws.rekognition.verdict-cache.max-size:10000}")
+    long maxSize;
+
+    @Value("${aws.rekognition.verdict-cache.ttl-minutes:1440}")
+    long ttlMinutes;
+
+    @Value("${aws.rekognition.verdict-cache.mongo-enabled:false}")
+    boolean mongoEnabled;
+
+    Cache<String, ModerationVerdict> memoryCache;
+    Counter memoryHits;
+    Counter memoryMisses;
+    Counter mongoHits;
+    Counter mongoMisses;
+
+    @PostConstruct
+    void init() {
+        memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        memoryHits = counter("memory", "hit");
+        memoryMisses = counter("memory", "miss");
+        mongoHits = counter("mongo", "hit");
+        mongoMisses = counter("mongo", "miss");
+        Gauge.builder("moderation.verdict.cache.size", memoryCache, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Trả về nhãn đã cache cho ảnh (digest) ở ngưỡng threshold, nếu không có thì gọi loader và lưu lại
+     */
+    public List<ModerationLabel> get(String digest, float threshold, Supplier<List<ModerationLabel>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        ModerationVerdict verdict = memoryCache.getIfPresent(digest);
+        if (usable(verdict, threshold)) {
+            memoryHits.increment();
+            return toLabels(verdict, threshold);
+        }
+        memoryMisses.increment();
+
+        if (mongoEnabled) {
+            verdict = findInMongo(digest);
+            if (usable(verdict, threshold)) {
+                mongoHits.increment();
+                memoryCache.put(digest, verdict);
+                return toLabels(verdict, threshold);
+            }
+            mongoMisses.increment();
+        }
+
+        List<ModerationLabel> labels = loader.get();
+        store(digest, threshold, labels);
+        return labels;
+    }
+
+    public String digest(InputStream in) throws IOException {
+        MessageDigest md = sha256();
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void store(String digest, float threshold, List<ModerationLabel> labels) {
+        ModerationVerdict verdict = ModerationVerdict.builder()
+                .id(digest)
+                .threshold(threshold)
+                .labels(labels.stream()
+                        .map(l -> ModerationVerdict.Label.builder()
+                                .name(l.name())
+                                .parentName(l.parentName())
+                                .confidence(l.confidence())
+                                .build())
+                        .toList())
+                .createdAt(Instant.now())
+                .build();
+        memoryCache.put(digest, verdict);
+
+        if (mongoEnabled) {
+            try {
+                moderationVerdictRepository.save(verdict);
+            } catch (Exception e) {
+                log.warn("Failed to persist moderation verdict {}: {}", digest, e.getMessage());
+            }
+        }
+    }
+
+    private ModerationVerdict findInMongo(String digest) {
+        try {
+            return moderationVerdictRepository.findById(digest).orElse(null);
+        } catch (Exception e) {
+            log.warn("Failed to read moderation verdict {}: {}", digest, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean usable(ModerationVerdict verdict, float threshold) {
+        return verdict != null && verdict.getLabels() != null && verdict.getThreshold() <= threshold;
+    }
+
+    private List<ModerationLabel> toLabels(ModerationVerdict verdict, float threshold) {
+        return verdict.getLabels().stream()
+                .filter(l -> l.getConfidence() >= threshold)
+                .map(l -> ModerationLabel.builder()
+                        .name(l.getName())
+                        .parentName(l.getParentName())
+                        .confidence(l.getConfidence())
+                        .build())
+                .toList();
+    }
+
+    private Counter counter(String tier, String result) {
+        return Counter.builder("moderation.verdict.cache")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,93 @@
+package iuh.fit.fe.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sinh key S3 dạng "{tên gốc}_{id}.{ext}", id là số 64 bit kiểu Snowflake:
+ * 42 bit millis tính từ 2024-01-01 | 10 bit node | 12 bit sequence, mã hoá Crockford base32 cố định 13 ký tự
+ * nên thứ tự chuỗi trùng thứ tự thời gian. Không khoá: trạng thái (millis, sequence) được cập nhật bằng CAS;
+ * hết sequence trong một millis thì mượn millis kế tiếp, đồng hồ lùi thì tiếp tục từ giá trị cũ.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ObjectKeyGenerator {
+    private static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final int MAX_BASE_NAME_LENGTH = 50;
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // (millis << SEQUENCE_BITS) | sequence của id cấp gần nhất
+    final AtomicLong lastState = new AtomicLong();
+
+    // 0..1023, bắt buộc và khác nhau giữa các instance: hai instance trùng node id có thể sinh trùng key
+    @Value("${aws.s3.key.node-id}")
+    long nodeId;
+
+    // > 0: thêm tiền tố hex (độ dài này) + "/" để trải key ra nhiều prefix S3; key khi đó có dạng "ab12/tên_id.ext"
+    @Value("${aws.s3.key.hash-prefix-length:0}")
+    int hashPrefixLength;
+
+    @PostConstruct
+    void init() {
+        if (nodeId < 0 || nodeId > NODE_MASK) {
+            throw new IllegalStateException("aws.s3.key.node-id must be between 0 and " + NODE_MASK + ": " + nodeId);
+        }
+        hashPrefixLength = Math.max(0, Math.min(hashPrefixLength, 16));
+        log.info("Object key generator node id: {}", nodeId);
+    }
+
+    public String newKey(String originalFilename) {
+        String name = originalFilename == null ? "" : originalFilename;
+        // bỏ phần đường dẫn mà một số trình duyệt gửi kèm (C:\\fakepath\\a.jpg)
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : (dot == 0 ? "" : name);
+        String extension = dot >= 0 ? name.substring(dot) : "";
+        if (baseName.length() > MAX_BASE_NAME_LENGTH) {
+            baseName = baseName.substring(0, MAX_BASE_NAME_LENGTH);
+        }
+
+        long id = nextId();
+        String key = (baseName.isEmpty() ? "" : baseName + "_") + encode(id) + extension;
+        return hashPrefixLength > 0 ? hashPrefix(id) + "/" + key : key;
+    }
+
+    long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long state = lastState.updateAndGet(last -> Math.max(last + 1, now));
+        long millis = state >>> SEQUENCE_BITS;
+        long sequence = state & ((1L << SEQUENCE_BITS) - 1);
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    private static String encode(long id) {
+        char[] out = new char[13];
+        for (int i = out.length - 1; i >= 0; i--) {
+            out[i] = CROCKFORD[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(out);
+    }
+
+    // Trộn bit (finalizer của SplitMix64) để tiền tố phân bố đều dù id tăng dần
+    private String hashPrefix(long id) {
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        String hex = String.format("%016x", z);
+        return hex.substring(0, hashPrefixLength);
+    }
+}
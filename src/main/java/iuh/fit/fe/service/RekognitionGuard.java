@@ -0,0 +1,277 @@
+package iuh.fit.fe.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.rekognition.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.rekognition.model.ThrottlingException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bảo vệ phía client cho các lời gọi Rekognition:
+ * <ul>
+ *   <li>Token bucket với rate thích ứng: giảm theo hệ số khi bị throttle (sau khi SDK đã retry),
+ *   tăng dần lại sau mỗi lời gọi thành công.</li>
+ *   <li>Circuit breaker: quá failure-threshold lỗi liên tiếp (throttle, 5xx, timeout/IO) thì mở mạch trong open-seconds,
+ *   sau đó chỉ cho một lời gọi thử; thử thành công thì đóng mạch.</li>
+ * </ul>
+ * Khi không gọi được (mạch mở, chờ token quá lâu, bị throttle) ném AppException(MODERATION_UNAVAILABLE);
+ * lỗi do chính request (ảnh hỏng, quá lớn...) được ném nguyên vẹn và không tính là lỗi của dịch vụ.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class RekognitionGuard {
+    // Nhiều lỗi throttle trong cùng một đợt chỉ giảm rate một lần
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    final MeterRegistry meterRegistry;
+
+    @Value("${aws.rekognition.rate-limit.initial-rate:10}")
+    double initialRate;
+
+    @Value("${aws.rekognition.rate-limit.min-rate:1}")
+    double minRate;
+
+    @Value("${aws.rekognition.rate-limit.max-rate:50}")
+    double maxRate;
+
+    @Value("${aws.rekognition.rate-limit.burst:10}")
+    double burst;
+
+    // Chờ token lâu hơn mức này thì trả lỗi ngay thay vì giữ request
+    @Value("${aws.rekognition.rate-limit.max-wait-ms:2000}")
+    long maxWaitMs;
+
+    @Value("${aws.rekognition.rate-limit.decrease-factor:0.5}")
+    double decreaseFactor;
+
+    @Value("${aws.rekognition.rate-limit.increase-per-success:0.2}")
+    double increasePerSuccess;
+
+    @Value("${aws.rekognition.circuit-breaker.failure-threshold:5}")
+    int failureThreshold;
+
+    @Value("${aws.rekognition.circuit-breaker.open-seconds:30}")
+    long openSeconds;
+
+    // Trạng thái bucket và breaker, truy cập trong synchronized(this)
+    double rate;
+    double tokens;
+    long refilledAt;
+    long decreasedAt;
+    CircuitState state = CircuitState.CLOSED;
+    int consecutiveFailures;
+    long openUntil;
+    boolean trialInFlight;
+
+    public enum CircuitState {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    @PostConstruct
+    void init() {
+        rate = Math.max(minRate, Math.min(maxRate, initialRate));
+        tokens = burst;
+        refilledAt = System.nanoTime();
+        decreasedAt = refilledAt - DECREASE_COOLDOWN_NANOS;
+        Gauge.builder("moderation.rate_limit", this, RekognitionGuard::currentRate)
+                .description("Current client-side Rekognition request rate (requests/s)")
+                .register(meterRegistry);
+        Gauge.builder("moderation.circuit.state", this, guard -> guard.circuitState().ordinal())
+                .description("Rekognition circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chạy một lời gọi Rekognition qua breaker và rate limiter
+     */
+    public <T> T call(Supplier<T> call) {
+        boolean trial = admit();
+        try {
+            acquireToken();
+        } catch (RuntimeException e) {
+            if (trial) {
+                abandonTrial();
+            }
+            throw e;
+        }
+
+        // Lời gọi thử kết thúc mà không ghi nhận được thành công/thất bại (bị ngắt, lỗi không phải của SDK)
+        // thì phải trả lượt thử, nếu không mạch kẹt ở HALF_OPEN
+        boolean recorded = false;
+        try {
+            T result = call.get();
+            onSuccess();
+            recorded = true;
+            return result;
+        } catch (AbortedException e) {
+            // Luồng bị ngắt, không nói lên gì về dịch vụ
+            throw e;
+        } catch (SdkServiceException e) {
+            if (isThrottling(e)) {
+                onThrottled();
+                onFailure();
+                recorded = true;
+                throw unavailable("throttled", e);
+            }
+            if (e.statusCode() >= 500) {
+                onFailure();
+                recorded = true;
+                throw unavailable("server_error", e);
+            }
+            onSuccess();
+            recorded = true;
+            throw e;
+        } catch (SdkClientException e) {
+            onFailure();
+            recorded = true;
+            throw unavailable("io_error", e);
+        } finally {
+            if (trial && !recorded) {
+                abandonTrial();
+            }
+        }
+    }
+
+    /**
+     * false khi mạch đang mở (chưa tới lúc cho lời gọi thử); dùng để worker nền bỏ qua một vòng
+     */
+    public synchronized boolean isCallPermitted() {
+        return state != CircuitState.OPEN || System.nanoTime() - openUntil >= 0;
+    }
+
+    public synchronized double currentRate() {
+        return rate;
+    }
+
+    public synchronized CircuitState circuitState() {
+        return state;
+    }
+
+    // true nếu đây là lời gọi thử khi HALF_OPEN
+    private synchronized boolean admit() {
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                throw unavailable("circuit_open", null);
+            }
+            state = CircuitState.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            if (trialInFlight) {
+                throw unavailable("circuit_open", null);
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void abandonTrial() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Giữ trước một token (tokens có thể âm) rồi ngủ tới lúc token đó có, ngoài synchronized
+     */
+    private void acquireToken() {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return;
+            }
+            waitNanos = (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) {
+                throw unavailable("rate_limited", null);
+            }
+            tokens -= 1;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw AbortedException.builder().message("Interrupted while waiting for a Rekognition rate-limit token").build();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1) * rate);
+        refilledAt = now;
+    }
+
+    private synchronized void onSuccess() {
+        refill(System.nanoTime());
+        rate = Math.min(maxRate, rate + increasePerSuccess);
+        consecutiveFailures = 0;
+        if (state == CircuitState.HALF_OPEN) {
+            state = CircuitState.CLOSED;
+            trialInFlight = false;
+            log.info("Rekognition circuit closed");
+        }
+    }
+
+    private synchronized void onThrottled() {
+        long now = System.nanoTime();
+        if (now - decreasedAt < DECREASE_COOLDOWN_NANOS) {
+            return;
+        }
+        refill(now);
+        rate = Math.max(minRate, rate * decreaseFactor);
+        // Bỏ phần burst còn lại để không bắn tiếp một loạt request vào dịch vụ đang quá tải
+        tokens = Math.min(tokens, 0);
+        decreasedAt = now;
+        log.warn("Rekognition throttled, lowering client rate to {} req/s", String.format("%.2f", rate));
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != CircuitState.OPEN) {
+                log.warn("Rekognition circuit opened for {}s after {} consecutive failure(s)",
+                        openSeconds, consecutiveFailures);
+            }
+            state = CircuitState.OPEN;
+            openUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(openSeconds);
+            trialInFlight = false;
+        }
+    }
+
+    private static boolean isThrottling(SdkServiceException e) {
+        return e.isThrottlingException()
+                || e instanceof ProvisionedThroughputExceededException
+                || e instanceof ThrottlingException;
+    }
+
+    private AppException unavailable(String reason, Exception cause) {
+        Counter.builder("moderation.unavailable")
+                .description("Moderation calls refused or failed because Rekognition is unavailable")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        if (cause != null) {
+            log.warn("Rekognition unavailable ({}): {}", reason, cause.getMessage());
+        } else {
+            log.debug("Rekognition call refused: {}", reason);
+        }
+        return new AppException(ErrorCode.MODERATION_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,343 @@
+package iuh.fit.fe.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * Cache read-through cho object nhỏ được tải nhiều (ảnh sản phẩm) của /download/{fileName}.
+ * <ul>
+ *   <li>Tầng heap giới hạn theo tổng byte; miss đồng thời cùng key chỉ tạo một GetObject.</li>
+ *   <li>Entry quá revalidate-after được trả ngay và kiểm tra lại nền bằng GetObject If-None-Match (304 = giữ nguyên).</li>
+ *   <li>Tầng đĩa (tuỳ chọn) nhận entry bị đẩy khỏi heap, đọc lại khi heap miss.</li>
+ * </ul>
+ * Xoá qua S3Service chỉ invalidate cache của instance hiện tại; instance khác thấy thay đổi sau lần kiểm tra lại.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class S3ObjectCache {
+    // Ước lượng chi phí heap của một entry ngoài mảng byte
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    // Tầng đĩa chỉ dùng thư mục con này trong disk-dir, nhận ra qua file đánh dấu do cache tạo
+    private static final String DISK_SUBDIR = "s3-object-cache";
+    private static final String DISK_MARKER = ".s3-object-cache";
+
+    final S3Client s3Client;
+    final ExecutorService s3StreamExecutor;
+    final MeterRegistry meterRegistry;
+
+    @Value("${aws.bucketName}")
+    String bucketName;
+
+    @Value("${aws.s3.download.cache.enabled:true}")
+    boolean enabled;
+
+    @Value("${aws.s3.download.cache.max-bytes:67108864}")
+    long maxBytes;
+
+    // Object lớn hơn ngưỡng này không được cache (chỉ nhớ là "lớn" để lần sau GetObject thẳng)
+    @Value("${aws.s3.download.cache.max-object-bytes:1048576}")
+    long maxObjectBytes;
+
+    @Value("${aws.s3.download.cache.revalidate-after-seconds:60}")
+    long revalidateAfterSeconds;
+
+    // Entry không được truy cập/kiểm tra lại quá lâu thì bỏ hẳn, tránh trả dữ liệu quá cũ
+    @Value("${aws.s3.download.cache.max-stale-seconds:600}")
+    long maxStaleSeconds;
+
+    // Rỗng = không dùng tầng đĩa. Cache dùng thư mục con s3-object-cache và chỉ xoá sạch thư mục con đó khi khởi động
+    @Value("${aws.s3.download.cache.disk-dir:}")
+    String diskDir;
+
+    @Value("${aws.s3.download.cache.disk-max-bytes:1073741824}")
+    long diskMaxBytes;
+
+    AsyncLoadingCache<String, CachedObject> heap;
+    Cache<String, DiskEntry> disk;
+    Path diskPath;
+
+    /**
+     * data == null: object không cache được (quá lớn hoặc rỗng)
+     */
+    record CachedObject(byte[] data, String eTag, String contentType, Instant lastModified, Instant validatedAt) {
+        int weight() {
+            return ENTRY_OVERHEAD_BYTES + (data == null ? 0 : data.length);
+        }
+
+        CachedObject revalidated() {
+            return new CachedObject(data, eTag, contentType, lastModified, Instant.now());
+        }
+    }
+
+    record DiskEntry(Path file, int size, String eTag, String contentType, Instant lastModified, Instant validatedAt) {
+    }
+
+    /**
+     * File tầng đĩa của lần chạy trước không còn entry trỏ tới nên được xoá khi khởi động. Chỉ xoá trong thư mục con
+     * do cache tạo (có file đánh dấu): disk-dir trỏ nhầm vào thư mục đang có dữ liệu khác thì không bị động tới,
+     * còn thư mục con trùng tên mà không phải của cache thì từ chối khởi động.
+     */
+    private static Path prepareDiskDir(Path root) throws IOException {
+        Path dir = root.resolve(DISK_SUBDIR);
+        Path marker = dir.resolve(DISK_MARKER);
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(dir);
+            Files.createFile(marker);
+            return dir;
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IllegalStateException("S3 object cache path " + dir + " exists and is not a directory");
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> entries = files.filter(file -> !file.equals(marker)).toList();
+            if (!Files.isRegularFile(marker, LinkOption.NOFOLLOW_LINKS)) {
+                // Thư mục rỗng: lần trước dừng giữa lúc tạo thư mục và file đánh dấu
+                if (!entries.isEmpty()) {
+                    throw new IllegalStateException("S3 object cache path " + dir
+                            + " was not created by the cache (missing " + DISK_MARKER + "); refusing to clear it");
+                }
+                Files.createFile(marker);
+            }
+            for (Path entry : entries) {
+                FileSystemUtils.deleteRecursively(entry);
+            }
+        }
+        return dir;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (!diskDir.isBlank()) {
+            diskPath = prepareDiskDir(Path.of(diskDir));
+            disk = Caffeine.newBuilder()
+                    .maximumWeight(diskMaxBytes)
+                    .weigher((String key, DiskEntry entry) -> entry.size())
+                    .expireAfterWrite(Duration.ofSeconds(maxStaleSeconds))
+                    .executor(s3StreamExecutor)
+                    .removalListener((String key, DiskEntry entry, RemovalCause cause) -> {
+                        if (entry != null) {
+                            deleteQuietly(entry.file());
+                        }
+                    })
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, disk, "s3.object.cache", "tier", "disk");
+        }
+
+        heap = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedObject object) -> object.weight())
+                .refreshAfterWrite(Duration.ofSeconds(revalidateAfterSeconds))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(maxStaleSeconds, revalidateAfterSeconds + 1)))
+                .executor(s3StreamExecutor)
+                .removalListener((String key, CachedObject object, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE && object != null && object.data() != null) {
+                        spill(key, object);
+                    }
+                })
+                .recordStats()
+                .buildAsync(new CacheLoader<>() {
+                    @Override
+                    public CachedObject load(String key) {
+                        return fetch(key);
+                    }
+
+                    @Override
+                    public CachedObject reload(String key, CachedObject oldValue) {
+                        return revalidate(key, oldValue);
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, heap.synchronous(), "s3.object.cache", "tier", "heap");
+    }
+
+    /**
+     * Stream nội dung object từ cache (nạp từ S3 nếu chưa có).
+     * Trả về null khi cache tắt hoặc object không cache được; caller tự GetObject như bình thường.
+     */
+    public ResponseInputStream<GetObjectResponse> get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        CachedObject object;
+        try {
+            object = heap.get(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        if (object == null || object.data() == null) {
+            return null;
+        }
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentType(object.contentType())
+                .contentLength((long) object.data().length)
+                .eTag(object.eTag())
+                .lastModified(object.lastModified())
+                .build();
+        return new ResponseInputStream<>(response,
+                AbortableInputStream.create(new ByteArrayInputStream(object.data())));
+    }
+
+    public void invalidate(Collection<String> keys) {
+        if (!enabled) {
+            return;
+        }
+        heap.synchronous().invalidateAll(keys);
+        if (disk != null) {
+            disk.invalidateAll(keys);
+        }
+    }
+
+    // Heap miss: lấy từ tầng đĩa nếu có (kiểm tra lại nếu đã cũ), không thì tải từ S3
+    private CachedObject fetch(String key) {
+        DiskEntry entry = disk != null ? disk.getIfPresent(key) : null;
+        if (entry != null) {
+            try {
+                CachedObject object = new CachedObject(Files.readAllBytes(entry.file()), entry.eTag(),
+                        entry.contentType(), entry.lastModified(), entry.validatedAt());
+                if (object.validatedAt().plusSeconds(revalidateAfterSeconds).isAfter(Instant.now())) {
+                    return object;
+                }
+                CachedObject fresh = revalidate(key, object);
+                if (fresh != null) {
+                    return fresh;
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read cached object {} from disk: {}", key, e.getMessage());
+                disk.invalidate(key);
+            }
+        }
+        return download(key, null);
+    }
+
+    /**
+     * GetObject If-None-Match: 304 thì giữ nội dung cũ, ETag khác thì thay bằng bản mới,
+     * 404 thì trả null để bỏ entry. Đánh dấu không cache được cũng kiểm tra theo ETag: object bị ghi đè
+     * bằng bản nhỏ thì được cache ở lần kiểm tra lại kế tiếp (đánh dấu từ 416 không có ETag nên luôn tải lại).
+     */
+    private CachedObject revalidate(String key, CachedObject old) {
+        try {
+            return download(key, old.eTag());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 304) {
+                return old.revalidated();
+            }
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * GetObject với Range 0..max-object-bytes-1: object nhỏ nhận đủ trong một request,
+     * object lớn chỉ tốn tối đa max-object-bytes trước khi huỷ.
+     */
+    private CachedObject download(String key, String ifNoneMatch) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=0-" + (maxObjectBytes - 1))
+                .ifNoneMatch(ifNoneMatch)
+                .build();
+        try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(request)) {
+            GetObjectResponse response = in.response();
+            if (totalSize(response) > maxObjectBytes) {
+                in.abort();
+                return new CachedObject(null, response.eTag(), null, null, Instant.now());
+            }
+            return new CachedObject(in.readAllBytes(), response.eTag(), response.contentType(),
+                    response.lastModified(), Instant.now());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (S3Exception e) {
+            // 416: object rỗng (Range không áp dụng được), để đường GetObject thường xử lý
+            if (e.statusCode() == 416) {
+                return new CachedObject(null, null, null, null, Instant.now());
+            }
+            throw e;
+        }
+    }
+
+    // Content-Range "bytes 0-1023/52000" -> 52000; server bỏ qua Range thì dùng Content-Length
+    private static long totalSize(GetObjectResponse response) {
+        String contentRange = response.contentRange();
+        if (contentRange != null) {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0 && !contentRange.endsWith("*")) {
+                return Long.parseLong(contentRange.substring(slash + 1).trim());
+            }
+        }
+        return response.contentLength() != null ? response.contentLength() : Long.MAX_VALUE;
+    }
+
+    // Entry bị đẩy khỏi heap vì đầy: ghi xuống tầng đĩa (bỏ qua nếu đĩa đã có cùng ETag)
+    private void spill(String key, CachedObject object) {
+        if (disk == null) {
+            return;
+        }
+        DiskEntry existing = disk.getIfPresent(key);
+        if (existing != null && Objects.equals(existing.eTag(), object.eTag())) {
+            return;
+        }
+        Path file = diskPath.resolve(UUID.randomUUID().toString());
+        try {
+            Files.write(file, object.data());
+            disk.put(key, new DiskEntry(file, object.data().length, object.eTag(), object.contentType(),
+                    object.lastModified(), object.validatedAt()));
+        } catch (IOException e) {
+            log.warn("Failed to spill cached object {} to disk: {}", key, e.getMessage());
+            deleteQuietly(file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete cache file {}: {}", file, e.getMessage());
+        }
+    }
+}
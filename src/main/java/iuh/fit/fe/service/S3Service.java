@@ -1,34 +1,87 @@
 package iuh.fit.fe.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iuh.fit.fe.dto.DeleteResult;
+import iuh.fit.fe.dto.PresignUploadRequest;
+import iuh.fit.fe.dto.PresignedUploadResponse;
+import iuh.fit.fe.dto.UploadedImageResponse;
+import iuh.fit.fe.entity.ModerationReview;
 import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.ModerationReviewRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @RequiredArgsConstructor
 public class S3Service {
+    // Mã lỗi từng key của DeleteObjects đáng để thử lại
+    private static final Set<String> RETRYABLE_DELETE_ERRORS = Set.of(
+            "SlowDown", "InternalError", "ServiceUnavailable", "RequestTimeout", "OperationAborted");
+    // User metadata (x-amz-meta-owner) ghi chủ sở hữu lên object để trừ quota khi xoá
+    private static final String OWNER_METADATA = "owner";
+    // Số HEAD gửi đồng thời khi tra chủ sở hữu trước lúc xoá (dưới max-pending-acquires của client)
+    private static final int HEAD_WINDOW = 256;
+
     final S3Client s3Client;
+    final S3AsyncClient s3AsyncClient;
+    final ExecutorService s3StreamExecutor;
     final ImageValidationService imageValidationService;
+    final ImageDerivativeService imageDerivativeService;
+    final S3Presigner s3Presigner;
+    final ObjectKeyGenerator objectKeyGenerator;
+    final StorageQuotaService storageQuotaService;
+    final MeterRegistry meterRegistry;
+    final S3ObjectCache s3ObjectCache;
+    final ModerationReviewRepository moderationReviewRepository;
 
     @Value("${aws.bucketName}")
     String bucketName;
@@ -36,50 +89,292 @@ public class S3Service {
     @Value("${aws.region}")
     String region;
 
+    @Value("${aws.s3.pipelined-upload:true}")
+    boolean pipelinedUpload;
+
+    @Value("${aws.s3.staging-prefix:staging/}")
+    String stagingPrefix;
+
+    @Value("${aws.s3.delete.parallelism:8}")
+    int deleteParallelism;
+
+    @Value("${aws.s3.delete.max-attempts:5}")
+    int deleteMaxAttempts;
+
+    @Value("${aws.s3.delete.base-backoff-ms:100}")
+    long deleteBaseBackoffMillis;
+
+    @Value("${aws.s3.delete.max-backoff-ms:5000}")
+    long deleteMaxBackoffMillis;
+
+    @Value("${aws.s3.direct-upload.quarantine-prefix:quarantine/}")
+    String quarantinePrefix;
+
+    @Value("${aws.s3.direct-upload.url-ttl-minutes:10}")
+    long uploadUrlTtlMinutes;
+
+    @Value("${aws.s3.direct-upload.max-bytes:10485760}")
+    long maxDirectUploadBytes;
+
+    // Ảnh chờ kiểm duyệt bất đồng bộ: moderation-prefix/{batchId}/{key}
+    @Value("${aws.s3.async-moderation.quarantine-prefix:moderation/}")
+    String moderationPrefix;
+
+    // true: /download/{fileName} trả 302 tới URL presigned thay vì stream qua service
+    @Value("${aws.s3.download.redirect:false}")
+    boolean downloadRedirect;
+
+    @Value("${aws.s3.download.url-ttl-minutes:15}")
+    long downloadUrlTtlMinutes;
+
+    // URL trong cache hết hạn sớm hơn chữ ký ít nhất khoảng này, để client luôn nhận URL còn dùng được
+    @Value("${aws.s3.download.url-cache-margin-minutes:5}")
+    long downloadUrlCacheMarginMinutes;
+
+    @Value("${aws.s3.download.url-cache-max-size:10000}")
+    long downloadUrlCacheMaxSize;
+
+    Cache<String, String> downloadUrlCache;
+
+    @PostConstruct
+    void init() {
+        long cacheMinutes = Math.max(0, downloadUrlTtlMinutes - downloadUrlCacheMarginMinutes);
+        downloadUrlCache = Caffeine.newBuilder()
+                .maximumSize(cacheMinutes > 0 ? downloadUrlCacheMaxSize : 0)
+                .expireAfterWrite(Duration.ofMinutes(cacheMinutes))
+                .build();
+    }
+
     public List<String> uploadFile(List<MultipartFile> files) throws IOException {
+        return uploadFile(files, ModerationPolicy.DEFAULT_CATEGORY);
+    }
+
+    public List<String> uploadFile(List<MultipartFile> files, String category) throws IOException {
+        return uploadImages(files, category).stream().map(UploadedImageResponse::getUrl).toList();
+    }
+
+    /**
+     * Upload ảnh gốc (all-or-nothing) và kèm ảnh phái sinh. Derivative được render trên pool xử lý ảnh
+     * song song với kiểm duyệt/upload; lỗi ở derivative không làm hỏng upload, chỉ bị bỏ khỏi kết quả.
+     * @param category category của chính sách kiểm duyệt (trống = default)
+     */
+    public List<UploadedImageResponse> uploadImages(List<MultipartFile> files, String category) throws IOException {
         if (files == null || files.isEmpty()) {
             log.warn("No files provided for upload");
             return List.of();
         }
+        String resolved = imageValidationService.resolveCategory(category);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            List<UploadedImageResponse> results = storeImages(files, resolved);
+            outcome = "success";
+            return results;
+        } catch (AppException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(batchTimer("s3", outcome));
+        }
+    }
 
-        log.info("Starting upload process for {} file(s)", files.size());
+    private List<UploadedImageResponse> storeImages(List<MultipartFile> files, String category) throws IOException {
+
+        // Giữ chỗ quota cho ảnh gốc trước khi ghi byte nào lên S3; ảnh phái sinh không tính
+        String owner = currentOwner();
+        long totalBytes = files.stream().mapToLong(MultipartFile::getSize).sum();
+        storageQuotaService.reserve(owner, totalBytes, files.size());
 
+        List<CompletableFuture<List<ImageDerivativeService.Derivative>>> rendered =
+                files.stream().map(imageDerivativeService::render).toList();
+        List<String> keys;
         try {
-            // Validate tất cả ảnh trước khi upload
-            log.info("Step 1: Validating {} file(s) before upload", files.size());
-            imageValidationService.validateImages(files);
-            log.info("Step 2: All files passed validation, proceeding to upload");
+            keys = uploadOriginals(files, owner, category);
+        } catch (IOException | RuntimeException e) {
+            rendered.forEach(future -> future.cancel(false));
+            storageQuotaService.release(owner, totalBytes, files.size());
+            throw e;
+        }
 
-            List<String> uploadedUrls = new ArrayList<>();
+        List<UploadedImageResponse> results = new ArrayList<>(keys.size());
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Map<String, String> derivativeUrls = new ConcurrentHashMap<>();
+            for (ImageDerivativeService.Derivative derivative : rendered.get(i).join()) {
+                String key = imageDerivativeService.keyFor(keys.get(i), derivative);
+                puts.add(s3AsyncClient.putObject(PutObjectRequest.builder()
+                                        .bucket(bucketName)
+                                        .key(key)
+                                        .contentType(derivative.contentType())
+                                        .build(),
+                                AsyncRequestBody.fromBytes(derivative.data()))
+                        .handle((response, error) -> {
+                            if (error != null) {
+                                log.warn("Failed to upload derivative {}: {}", key, error.getMessage());
+                            } else {
+                                derivativeUrls.put(derivative.label(), toUrl(key));
+                            }
+                            return null;
+                        }));
+            }
+            results.add(UploadedImageResponse.builder()
+                    .url(toUrl(keys.get(i)))
+                    .derivatives(derivativeUrls)
+                    .build());
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).join();
+        return results;
+    }
 
-            for (int i = 0; i < files.size(); i++) {
-                MultipartFile file = files.get(i);
-                try {
-                    log.info("Uploading file {}/{}: {}", i + 1, files.size(), file.getOriginalFilename());
+    /**
+     * Cấp URL presigned PUT để client upload thẳng lên S3 (không đi qua service).
+     * Object nằm dưới quarantine-prefix/{userId}/{batch}/ cho tới khi /s3/finalize kiểm duyệt xong.
+     * Content-Type và Content-Length là signed header nên client không gửi được loại/kích thước khác.
+     */
+    public List<PresignedUploadResponse> presignUploads(String userId, List<PresignUploadRequest.FileItem> files) {
+        if (files == null || files.isEmpty()) {
+            return List.of();
+        }
+        // Dữ liệu chưa tới service nên chỉ kiểm tra; quota được giữ thật khi finalize
+        storageQuotaService.check(userId,
+                files.stream().mapToLong(PresignUploadRequest.FileItem::getSize).sum(), files.size());
+        String batchPrefix = quarantinePrefix + userId + "/" + UUID.randomUUID() + "/";
+        Duration ttl = Duration.ofMinutes(uploadUrlTtlMinutes);
+
+        List<PresignedUploadResponse> result = new ArrayList<>(files.size());
+        for (PresignUploadRequest.FileItem item : files) {
+            if (item.getContentType() == null || !item.getContentType().startsWith("image/")) {
+                throw new AppException(ErrorCode.FILE_NOT_VALID);
+            }
+            if (item.getSize() <= 0 || item.getSize() > maxDirectUploadBytes) {
+                throw new AppException(ErrorCode.FILE_TOO_LARGE);
+            }
+            String key = batchPrefix + customizeFileName(item.getFileName());
+            PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                    .signatureDuration(ttl)
+                    .putObjectRequest(PutObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .contentType(item.getContentType())
+                            .contentLength(item.getSize())
+                            .metadata(ownerMetadata(userId))
+                            .build())
+                    .build());
 
-                    String fileName = customizeFileName(file.getOriginalFilename());
-                    s3Client.putObject(
-                            PutObjectRequest.builder()
-                                    .bucket(bucketName)
-                                    .key(fileName)
-                                    .contentType(file.getContentType())
-                                    .build(),
-                            RequestBody.fromBytes(file.getBytes()));
-
-                    String fileUrl = String.format("https://%s.s3.%s.amazonaws.com/%s",
-                            bucketName, region, fileName);
-                    uploadedUrls.add(fileUrl);
-                    log.info("Successfully uploaded file {}/{}: {} -> {}",
-                            i + 1, files.size(), file.getOriginalFilename(), fileName);
-
-                } catch (IOException e) {
-                    log.error("Failed to upload file {}: {}", file.getOriginalFilename(), e.getMessage(), e);
-                    throw new RuntimeException("Failed to upload file: " + file.getOriginalFilename(), e);
+            Map<String, String> headers = new LinkedHashMap<>();
+            presigned.signedHeaders().forEach((name, values) -> {
+                if (!"host".equalsIgnoreCase(name)) {
+                    headers.put(name, String.join(",", values));
                 }
+            });
+            result.add(PresignedUploadResponse.builder()
+                    .fileName(item.getFileName())
+                    .key(key)
+                    .url(presigned.url().toString())
+                    .method(presigned.httpRequest().method().name())
+                    .headers(headers)
+                    .expiresAt(presigned.expiration())
+                    .build());
+        }
+        log.info("Issued {} presigned upload URL(s) under {}", result.size(), batchPrefix);
+        return result;
+    }
+
+    /**
+     * Kiểm duyệt các object client đã upload (Rekognition đọc trực tiếp từ S3) rồi copy sang key công khai.
+     * All-or-nothing: có ảnh bị từ chối thì xoá toàn bộ object quarantine của lô.
+     */
+    public List<String> finalizeUploads(String userId, List<String> quarantineKeys, String category) throws IOException {
+        if (quarantineKeys == null || quarantineKeys.isEmpty()) {
+            return List.of();
+        }
+        String resolved = imageValidationService.resolveCategory(category);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            List<String> urls = finalizeQuarantined(userId, quarantineKeys, resolved);
+            outcome = "success";
+            return urls;
+        } catch (AppException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(batchTimer("s3-direct", outcome));
+        }
+    }
+
+    private List<String> finalizeQuarantined(String userId, List<String> quarantineKeys, String category)
+            throws IOException {
+        String ownerPrefix = quarantinePrefix + userId + "/";
+        for (String key : quarantineKeys) {
+            if (key == null || !key.startsWith(ownerPrefix) || key.contains("..")) {
+                throw new AppException(ErrorCode.UPLOAD_KEY_INVALID);
             }
+        }
 
-            log.info("Successfully uploaded {}/{} file(s)", uploadedUrls.size(), files.size());
-            return uploadedUrls;
+        // Kích thước thật lấy từ S3 (Content-Length đã được ký khi cấp URL)
+        long totalBytes = 0;
+        if (storageQuotaService.isEnabled()) {
+            Map<String, HeadObjectResponse> heads = headAll(quarantineKeys);
+            if (heads.size() != quarantineKeys.size()) {
+                throw new AppException(ErrorCode.UPLOAD_KEY_INVALID);
+            }
+            totalBytes = heads.values().stream().mapToLong(HeadObjectResponse::contentLength).sum();
+        }
+
+        try {
+            storageQuotaService.reserve(userId, totalBytes, quarantineKeys.size());
+        } catch (AppException e) {
+            deleteQuietly(quarantineKeys);
+            throw e;
+        }
+
+        // quarantine/{userId}/{batch}/{key} -> {key}
+        List<String> keys = quarantineKeys.stream()
+                .map(k -> k.substring(ownerPrefix.length()))
+                .map(k -> k.substring(k.indexOf('/') + 1))
+                .toList();
+        Set<Integer> deferred;
+        try {
+            deferred = imageValidationService.validateS3Images(bucketName, quarantineKeys, category);
+        } catch (RuntimeException e) {
+            log.error("Direct upload batch rejected, removing {} quarantined object(s): {}",
+                    quarantineKeys.size(), e.getMessage());
+            storageQuotaService.release(userId, totalBytes, quarantineKeys.size());
+            deleteQuietly(quarantineKeys);
+            throw e;
+        }
+
+        try {
+            promote(quarantineKeys, keys);
+            queueForReview(keys, deferred, userId, category);
+        } catch (IOException | RuntimeException e) {
+            storageQuotaService.release(userId, totalBytes, quarantineKeys.size());
+            throw e;
+        }
+        log.info("Finalized {} direct upload(s)", keys.size());
+        return keys.stream().map(this::toUrl).toList();
+    }
+
+    private List<String> uploadOriginals(List<MultipartFile> files, String owner, String category) throws IOException {
+        log.info("Starting upload process for {} file(s)", files.size());
+
+        if (pipelinedUpload) {
+            return uploadPipelined(files, owner, category);
+        }
+
+        try {
+            // Validate tất cả ảnh trước khi upload
+            log.info("Step 1: Validating {} file(s) before upload", files.size());
+            Set<Integer> deferred = imageValidationService.validateImages(files, category);
+            log.info("Step 2: All files passed validation, proceeding to upload");
+
+            List<String> fileNames = files.stream().map(f -> customizeFileName(f.getOriginalFilename())).toList();
+            putAll(fileNames, files, owner);
+            queueForReview(fileNames, deferred, owner, category);
+
+            log.info("Successfully uploaded {}/{} file(s)", fileNames.size(), files.size());
+            return fileNames;
 
         } catch (AppException e) {
             log.error("Image validation failed: {}", e.getMessage());
@@ -90,58 +385,541 @@ public class S3Service {
         }
     }
 
-    public byte[] downloadFile(String key) {
-        ResponseBytes<GetObjectResponse> objectAsByte = s3Client.getObjectAsBytes(
-                GetObjectRequest.builder()
+    /**
+     * Upload dạng pipeline: mỗi ảnh qua kiểm duyệt được đẩy ngay lên S3 dưới staging-prefix
+     * trong khi các ảnh khác vẫn đang kiểm duyệt. Cả lô đạt thì copy sang key chính thức,
+     * có ảnh bị từ chối thì xoá toàn bộ object staging của lô (all-or-nothing).
+     */
+    private List<String> uploadPipelined(List<MultipartFile> files, String owner, String category) throws IOException {
+        String batchPrefix = stagingPrefix + UUID.randomUUID() + "/";
+        List<String> keys = files.stream().map(f -> customizeFileName(f.getOriginalFilename())).toList();
+        List<String> stagingKeys = keys.stream().map(k -> batchPrefix + k).toList();
+
+        Set<Integer> deferred;
+        try {
+            deferred = imageValidationService.validateImages(files, category, (index, file) -> {
+                putObject(stagingKeys.get(index), file, file.getContentType(), owner);
+                log.info("Staged file {}/{}: {} -> {}",
+                        index + 1, files.size(), file.getOriginalFilename(), stagingKeys.get(index));
+            });
+        } catch (IOException | RuntimeException e) {
+            log.error("Batch rejected, removing staged objects under {}: {}", batchPrefix, e.getMessage());
+            deleteQuietly(stagingKeys);
+            throw e;
+        }
+
+        promote(stagingKeys, keys);
+        queueForReview(keys, deferred, owner, category);
+        log.info("Successfully uploaded {}/{} file(s)", keys.size(), files.size());
+        return keys;
+    }
+
+    /**
+     * Ghi các ảnh được nhận khi Rekognition không khả dụng vào moderation_review, sau khi cả lô đã nằm ở key chính thức,
+     * để ModerationReviewService kiểm duyệt lại (ảnh bị từ chối khi đó sẽ bị xoá).
+     * Ghi lỗi thì xoá cả lô (all-or-nothing như upload): không để ảnh chưa kiểm duyệt công khai mà không có bản ghi.
+     */
+    private void queueForReview(List<String> keys, Set<Integer> deferred, String owner, String category) {
+        if (deferred.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            moderationReviewRepository.saveAll(deferred.stream()
+                    .map(index -> ModerationReview.builder()
+                            .id(keys.get(index))
+                            .status(ModerationReview.Status.PENDING)
+                            .owner(owner)
+                            .category(category)
+                            .createdAt(now)
+                            .build())
+                    .toList());
+        } catch (RuntimeException e) {
+            log.error("Failed to queue {} image(s) for review, removing the batch: {}", deferred.size(), e.getMessage());
+            deleteQuietly(keys);
+            throw e;
+        }
+        log.warn("Queued {} image(s) accepted without moderation for later review", deferred.size());
+    }
+
+    /**
+     * Copy song song object từ staging sang key chính thức; lỗi thì xoá các key đã copy
+     */
+    private void promote(List<String> stagingKeys, List<String> keys) throws IOException {
+        List<CompletableFuture<CopyObjectResponse>> futures = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            futures.add(s3AsyncClient.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucketName)
+                    .sourceKey(stagingKeys.get(i))
+                    .destinationBucket(bucketName)
+                    .destinationKey(keys.get(i))
+                    .build()));
+        }
+        try {
+            joinOrRollback(futures, keys);
+        } finally {
+            deleteQuietly(stagingKeys);
+        }
+    }
+
+    public String moderationKey(String batchId, String key) {
+        return moderationPrefix + batchId + "/" + key;
+    }
+
+    /**
+     * Ghi ảnh chờ kiểm duyệt bất đồng bộ vào quarantine (all-or-nothing như upload thường)
+     */
+    public void putQuarantined(List<String> quarantineKeys, List<MultipartFile> files, String owner) throws IOException {
+        putAll(quarantineKeys, files, owner);
+    }
+
+    /**
+     * Copy từng object quarantine sang key công khai độc lập với nhau; object copy thành công thì xoá bản quarantine,
+     * object lỗi được giữ nguyên để thử lại. Trả về các key quarantine đã promote.
+     */
+    public Set<String> promoteEach(List<String> quarantineKeys, List<String> keys) {
+        List<CompletableFuture<CopyObjectResponse>> futures = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            futures.add(s3AsyncClient.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucketName)
+                    .sourceKey(quarantineKeys.get(i))
+                    .destinationBucket(bucketName)
+                    .destinationKey(keys.get(i))
+                    .build()));
+        }
+        Set<String> promoted = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).join();
+                promoted.add(quarantineKeys.get(i));
+            } catch (CompletionException e) {
+                log.warn("Failed to promote {} -> {}: {}", quarantineKeys.get(i), keys.get(i), e.getCause().getMessage());
+            }
+        }
+        deleteQuietly(new ArrayList<>(promoted));
+        return promoted;
+    }
+
+    // Dọn dẹp khi rollback: không để lỗi xoá che mất lỗi gốc
+    private void deleteQuietly(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            DeleteResult result = deleteKeys(keys, false);
+            if (!result.getFailed().isEmpty()) {
+                log.error("Failed to clean up {} object(s): {}", result.getFailed().size(), result.getFailed());
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to clean up {} object(s): {}", keys.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Gửi đồng thời toàn bộ putObject qua S3AsyncClient rồi join.
+     * Có file lỗi thì xoá các object đã upload thành công trong lô (all-or-nothing).
+     */
+    private void putAll(List<String> keys, List<MultipartFile> files, String owner) throws IOException {
+        List<CompletableFuture<PutObjectResponse>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            futures.add(putObjectAsync(keys.get(i), files.get(i), owner));
+        }
+
+        joinOrRollback(futures, keys);
+        for (int i = 0; i < files.size(); i++) {
+            log.info("Successfully uploaded file {}/{}: {} -> {}",
+                    i + 1, files.size(), files.get(i).getOriginalFilename(), keys.get(i));
+        }
+    }
+
+    /**
+     * Chờ toàn bộ future (keys.get(i) ứng với futures.get(i)); có lỗi thì xoá các key
+     * đã ghi thành công rồi ném lại lỗi gốc
+     */
+    private void joinOrRollback(List<? extends CompletableFuture<?>> futures, List<String> keys) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            List<String> written = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).isCompletedExceptionally()) {
+                    written.add(keys.get(i));
+                }
+            }
+            log.error("Batch write failed, rolling back {} object(s): {}", written.size(), e.getCause().getMessage());
+            deleteQuietly(written);
+
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<PutObjectResponse> putObjectAsync(String key, MultipartFile file, String owner) {
+        InputStream in;
+        try {
+            in = file.getInputStream();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return s3AsyncClient.putObject(
+                        PutObjectRequest.builder()
+                                .bucket(bucketName)
+                                .key(key)
+                                .contentType(file.getContentType())
+                                .contentLength(file.getSize())
+                                .metadata(ownerMetadata(owner))
+                                .build(),
+                        AsyncRequestBody.fromInputStream(b -> b
+                                .inputStream(in)
+                                .contentLength(file.getSize())
+                                .executor(s3StreamExecutor)))
+                .whenComplete((response, error) -> closeQuietly(in));
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // stream của multipart, không cần xử lý thêm
+        }
+    }
+
+    /**
+     * Stream nội dung multipart thẳng lên S3 (không gọi file.getBytes()).
+     * SDK mở lại stream từ MultipartFile khi cần retry nên không phải giữ bản sao trên heap.
+     */
+    private void putObject(String key, MultipartFile file, String contentType, String owner) throws IOException {
+        s3Client.putObject(
+                PutObjectRequest.builder()
                         .bucket(bucketName)
                         .key(key)
-                        .build());
-        return objectAsByte.asByteArray();
+                        .contentType(contentType)
+                        .contentLength(file.getSize())
+                        .metadata(ownerMetadata(owner))
+                        .build(),
+                RequestBody.fromContentProvider(() -> openStream(file), file.getSize(), contentType));
+    }
+
+    private static InputStream openStream(MultipartFile file) {
+        try {
+            return file.getInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Thời gian end-to-end của một lô upload (kiểm duyệt + ghi + promote), tách theo đường upload và kết quả
+    private Timer batchTimer(String path, String outcome) {
+        return Timer.builder("upload.batch")
+                .tag("path", path)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Map<String, String> ownerMetadata(String owner) {
+        return owner == null ? Map.of() : Map.of(OWNER_METADATA, owner);
+    }
+
+    // null khi không có người dùng đăng nhập (job nền, benchmark): không tính quota
+    private static String currentOwner() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+
+    /**
+     * Các key trong danh sách hiện có trên bucket (key lỗi khi HEAD coi như không có)
+     */
+    public Set<String> existingKeys(List<String> keys) {
+        return headAll(keys).keySet();
+    }
+
+    /**
+     * Các key mà HEAD trả 404; key lỗi khác (AccessDenied, timeout...) không nằm trong cả hai tập
+     */
+    public Set<String> missingKeys(List<String> keys) {
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+        headAll(keys, missing);
+        return missing;
+    }
+
+    private Map<String, HeadObjectResponse> headAll(List<String> keys) {
+        return headAll(keys, null);
+    }
+
+    /**
+     * HEAD song song theo từng cửa sổ HEAD_WINDOW key; key không tồn tại hoặc lỗi bị bỏ khỏi kết quả
+     * @param missing nếu khác null thì nhận các key HEAD trả 404
+     */
+    private Map<String, HeadObjectResponse> headAll(List<String> keys, Set<String> missing) {
+        Map<String, HeadObjectResponse> heads = new ConcurrentHashMap<>();
+        for (int i = 0; i < keys.size(); i += HEAD_WINDOW) {
+            CompletableFuture<?>[] window = keys.subList(i, Math.min(i + HEAD_WINDOW, keys.size())).stream()
+                    .map(key -> s3AsyncClient.headObject(HeadObjectRequest.builder()
+                                    .bucket(bucketName)
+                                    .key(key)
+                                    .build())
+                            .handle((response, error) -> {
+                                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                                if (error == null) {
+                                    heads.put(key, response);
+                                } else if (cause instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+                                    if (missing != null) {
+                                        missing.add(key);
+                                    }
+                                } else {
+                                    log.warn("HeadObject failed for {}: {}", key, cause.getMessage());
+                                }
+                                return null;
+                            }))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(window).join();
+        }
+        return heads;
+    }
+
+    public String toUrl(String key) {
+        return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, region, key);
+    }
+
+    /**
+     * Mở stream tới object trên S3, không đọc toàn bộ vào heap; caller phải đóng stream.
+     * range dạng "bytes=start-end" được chuyển thẳng cho GetObject (null = cả object).
+     * Request cả object được phục vụ từ S3ObjectCache nếu object đủ nhỏ để cache.
+     */
+    public ResponseInputStream<GetObjectResponse> downloadFile(String key, String range) {
+        requirePublic(key);
+        try {
+            if (range == null) {
+                ResponseInputStream<GetObjectResponse> cached = s3ObjectCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            return s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range(toS3Range(range))
+                    .build());
+        } catch (NoSuchKeyException e) {
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 416) {
+                throw new AppException(ErrorCode.RANGE_NOT_SATISFIABLE);
+            }
+            throw e;
+        }
+    }
+
+    // Object trong staging/quarantine chưa qua kiểm duyệt, không phục vụ qua /download
+    private void requirePublic(String key) {
+        if (key.startsWith(stagingPrefix) || key.startsWith(quarantinePrefix) || key.startsWith(moderationPrefix)) {
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        }
+    }
+
+    public boolean isDownloadRedirect() {
+        return downloadRedirect;
+    }
+
+    /**
+     * URL presigned GET để client tải thẳng từ S3. Key nóng được lấy từ cache (không ký HMAC lại);
+     * entry hết hạn trước chữ ký url-cache-margin-minutes nên URL trả ra luôn còn hạn ít nhất chừng đó.
+     */
+    public String presignedDownloadUrl(String key) {
+        requirePublic(key);
+        return downloadUrlCache.get(key, k -> s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                        .signatureDuration(Duration.ofMinutes(downloadUrlTtlMinutes))
+                        .getObjectRequest(GetObjectRequest.builder()
+                                .bucket(bucketName)
+                                .key(k)
+                                .build())
+                        .build())
+                .url()
+                .toString());
+    }
+
+    // S3 chỉ hỗ trợ một range; multi-range hoặc đơn vị khác thì bỏ qua và trả cả object (RFC 9110 cho phép)
+    private static String toS3Range(String range) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        return range;
     }
 
     public String customizeFileName(String originalFilename) {
-        String fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        String baseName = originalFilename.substring(0, Math.min(originalFilename.lastIndexOf("."), 50));
-        String uniqueSuffix = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        return baseName + "_" + uniqueSuffix + fileExtension;
+        return objectKeyGenerator.newKey(originalFilename);
     }
 
-    public List<String> deleteFiles(List<String> urlsOrKeys) {
+    public DeleteResult deleteFiles(List<String> urlsOrKeys) {
         if (urlsOrKeys == null || urlsOrKeys.isEmpty()) {
             log.info("No URLs/keys provided for deletion.");
-            return List.of();
+            return DeleteResult.builder().deleted(List.of()).notFound(List.of()).failed(List.of()).build();
         }
         log.info("Deleting {} item(s).", urlsOrKeys.size());
 
-        List<String> keys = urlsOrKeys.stream().map(this::extractKey).toList();
-        List<String> deletedAll = new ArrayList<>();
+        List<String> keys = urlsOrKeys.stream().map(this::extractKey).distinct().toList();
+        return deleteWithDerivatives(keys);
+    }
 
-        // Chia lô 1000 đối tượng/lần theo giới hạn S3
-        for (int i = 0; i < keys.size(); i += 1000) {
-            List<String> chunk = keys.subList(i, Math.min(i + 1000, keys.size()));
-            List<ObjectIdentifier> objects = chunk.stream()
-                    .map(k -> ObjectIdentifier.builder().key(k).build())
-                    .toList();
+    /**
+     * Xoá các key cùng ảnh phái sinh của chúng. Kết quả chỉ gồm các key được yêu cầu; derivative không tính quota
+     * và chỉ được xoá khi bản gốc đã xoá (hoặc không còn), lỗi khi xoá derivative chỉ ghi log.
+     */
+    public DeleteResult deleteWithDerivatives(List<String> keys) {
+        DeleteResult result = deleteKeys(keys);
+        List<String> removed = Stream.concat(result.getDeleted().stream(), result.getNotFound().stream()).toList();
+        // Ảnh đã xoá không còn gì để kiểm duyệt lại
+        try {
+            moderationReviewRepository.deleteAllById(removed);
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove review records of {} deleted object(s): {}", removed.size(), e.getMessage());
+        }
+        List<String> derivativeKeys = removed.stream()
+                .flatMap(key -> imageDerivativeService.keysFor(key).stream())
+                .toList();
+        if (!derivativeKeys.isEmpty()) {
+            DeleteResult derivatives = deleteKeys(derivativeKeys, false);
+            if (!derivatives.getFailed().isEmpty()) {
+                log.warn("Failed to delete {} derivative object(s): {}", derivatives.getFailed().size(), derivatives.getFailed());
+            }
+        }
+        return result;
+    }
 
-            DeleteObjectsResponse res = s3Client.deleteObjects(DeleteObjectsRequest.builder()
-                    .bucket(bucketName)
-                    .delete(Delete.builder().objects(objects).build())
-                    .build());
+    /**
+     * Xoá theo lô 1000 key (giới hạn của DeleteObjects), tối đa delete.parallelism lô chạy đồng thời.
+     * Key lỗi tạm thời (SlowDown, InternalError...) được gửi lại với backoff có jitter.
+     */
+    public DeleteResult deleteKeys(List<String> keys) {
+        return deleteKeys(keys, true);
+    }
 
-            if (res.hasDeleted()) {
-                deletedAll.addAll(res.deleted().stream().map(DeletedObject::key).toList());
+    /**
+     * headFirst: HEAD từng key trước khi xoá. DeleteObjects coi key không tồn tại là đã xoá, nên notFound lấy từ
+     * HEAD 404; HEAD cũng cho chủ sở hữu (metadata owner) và kích thước để trừ quota khi quota bật.
+     * Dọn object staging/quarantine/derivative nội bộ không cần tra vì không báo kết quả cho client
+     * và phần quota của chúng đã được release.
+     */
+    private DeleteResult deleteKeys(List<String> keys, boolean headFirst) {
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+        Map<String, HeadObjectResponse> heads = headFirst ? headAll(keys, missing) : Map.of();
+
+        Queue<String> deleted = new ConcurrentLinkedQueue<>();
+        Queue<String> notFound = new ConcurrentLinkedQueue<>();
+        Queue<String> failed = new ConcurrentLinkedQueue<>();
+
+        Queue<List<String>> chunks = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < keys.size(); i += 1000) {
+            chunks.add(keys.subList(i, Math.min(i + 1000, keys.size())));
+        }
+        // Mỗi worker lấy lô kế tiếp khi lô trước xong, nên số request đồng thời không vượt parallelism
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(Math.max(1, deleteParallelism), chunks.size()); i++) {
+            workers.add(drainDeletes(chunks, deleted, notFound, failed));
+        }
+        CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
+        // Key HEAD 404 vẫn được gửi xoá (object có thể vừa được tạo sau HEAD) nhưng báo là không tồn tại
+        for (String key : missing) {
+            if (deleted.remove(key)) {
+                notFound.add(key);
             }
-            if (res.hasErrors()) {
-                res.errors().forEach(err ->
-                        log.warn("Delete error - key: {}, code: {}, msg: {}", err.key(), err.code(), err.message()));
+        }
+        // Sau khi xoá (không phải trước) để request đồng thời không nạp lại object sắp bị xoá vào cache
+        s3ObjectCache.invalidate(keys);
+
+        if (!failed.isEmpty()) {
+            log.error("Failed to delete {} object(s) after {} attempt(s)", failed.size(), deleteMaxAttempts);
+        }
+        for (String key : deleted) {
+            HeadObjectResponse head = heads.get(key);
+            if (head != null) {
+                storageQuotaService.record(head.metadata().get(OWNER_METADATA), -head.contentLength(), -1);
             }
         }
-        log.info("Batch deleted {} object(s) from {}", deletedAll.size(), bucketName);
-        return deletedAll;
+        log.info("Batch deleted {} object(s) from {} ({} not found, {} failed)",
+                deleted.size(), bucketName, notFound.size(), failed.size());
+        return DeleteResult.builder()
+                .deleted(List.copyOf(deleted))
+                .notFound(List.copyOf(notFound))
+                .failed(List.copyOf(failed))
+                .build();
+    }
+
+    private CompletableFuture<Void> drainDeletes(Queue<List<String>> chunks, Queue<String> deleted,
+                                                 Queue<String> notFound, Queue<String> failed) {
+        List<String> chunk = chunks.poll();
+        if (chunk == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return deleteChunk(chunk, 1, deleted, notFound, failed)
+                .thenCompose(v -> drainDeletes(chunks, deleted, notFound, failed));
+    }
+
+    private CompletableFuture<Void> deleteChunk(List<String> chunk, int attempt, Queue<String> deleted,
+                                                Queue<String> notFound, Queue<String> failed) {
+        List<ObjectIdentifier> objects = chunk.stream()
+                .map(k -> ObjectIdentifier.builder().key(k).build())
+                .toList();
+
+        return s3AsyncClient.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(objects).quiet(true).build())
+                        .build())
+                .handle((res, error) -> {
+                    List<String> retry = new ArrayList<>();
+                    if (error != null) {
+                        // SDK đã tự retry cả request; vẫn lỗi thì thử lại cả lô ở tầng này
+                        log.warn("DeleteObjects request failed (attempt {}): {}", attempt, error.getMessage());
+                        retry.addAll(chunk);
+                    } else {
+                        Set<String> errorKeys = new HashSet<>();
+                        if (res.hasErrors()) {
+                            for (S3Error err : res.errors()) {
+                                errorKeys.add(err.key());
+                                if ("NoSuchKey".equals(err.code())) {
+                                    notFound.add(err.key());
+                                } else if (RETRYABLE_DELETE_ERRORS.contains(err.code())) {
+                                    retry.add(err.key());
+                                } else {
+                                    log.warn("Delete error - key: {}, code: {}, msg: {}", err.key(), err.code(), err.message());
+                                    failed.add(err.key());
+                                }
+                            }
+                        }
+                        // quiet mode: chỉ trả về key lỗi, còn lại là đã xoá
+                        chunk.stream().filter(k -> !errorKeys.contains(k)).forEach(deleted::add);
+                    }
+                    return retry;
+                })
+                .thenCompose(retry -> {
+                    if (retry.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (attempt >= deleteMaxAttempts) {
+                        failed.addAll(retry);
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    long delay = backoffMillis(attempt);
+                    log.debug("Retrying delete of {} key(s) in {} ms (attempt {})", retry.size(), delay, attempt + 1);
+                    return CompletableFuture.supplyAsync(() -> null,
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(v -> deleteChunk(retry, attempt + 1, deleted, notFound, failed));
+                });
+    }
+
+    // Full jitter: ngẫu nhiên trong [0, min(max, base * 2^(attempt-1))]
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(deleteMaxBackoffMillis, deleteBaseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
     }
 
     // Nhận full URL (https://bucket.s3.region.amazonaws.com/a/b.png) hoặc key thuần (a/b.png) → trả key
-    private String extractKey(String input) {
+    public String extractKey(String input) {
         if (input == null || input.isBlank()) throw new IllegalArgumentException("Key/URL must not be empty");
         String raw = input.trim();
 
@@ -176,19 +954,14 @@ public class S3Service {
 
         log.info("Starting upload process for file: {}", originalFilename);
 
+        String owner = currentOwner();
+        storageQuotaService.reserve(owner, file.getSize(), 1);
         try {
             // Generate a unique file name
             String fileName = customizeFileName(originalFilename);
 
             // Upload the file to S3
-            s3Client.putObject(
-                    PutObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(fileName)
-                            .contentType("application/pdf")
-                            .build(),
-                    RequestBody.fromBytes(file.getBytes())
-            );
+            putObject(fileName, file, "application/pdf", owner);
 
             // Generate the file URL
             String fileUrl = String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, region, fileName);
@@ -197,8 +970,12 @@ public class S3Service {
             return fileUrl;
 
         } catch (IOException e) {
+            storageQuotaService.release(owner, file.getSize(), 1);
             log.error("Failed to upload file {}: {}", originalFilename, e.getMessage(), e);
             throw new RuntimeException("Failed to upload file: " + originalFilename, e);
+        } catch (RuntimeException e) {
+            storageQuotaService.release(owner, file.getSize(), 1);
+            throw e;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,251 @@
+package iuh.fit.fe.service;
+
+import iuh.fit.fe.entity.StorageUsage;
+import iuh.fit.fe.exception.AppException;
+import iuh.fit.fe.exception.ErrorCode;
+import iuh.fit.fe.repository.StorageUsageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đếm dung lượng/số object theo owner. Mỗi upload/xoá chỉ cộng vào LongAdder trong bộ nhớ;
+ * phần chênh lệch được ghi xuống storage_usage định kỳ bằng một lệnh bulk $inc cho tất cả owner.
+ * Mỗi lần flush nạp lại tổng của mọi owner đang giữ trong bộ nhớ (kể cả owner không có thay đổi ở instance này)
+ * để nhận phần do instance khác ghi; owner không dùng tới quá idle-evict-seconds bị bỏ khỏi bộ nhớ.
+ */
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@RequiredArgsConstructor
+public class StorageQuotaService {
+    final StorageUsageRepository storageUsageRepository;
+    final MongoTemplate mongoTemplate;
+
+    final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    // Mặc định tắt: storage_usage chỉ đếm từ lúc bật, file có sẵn trước đó không được tính
+    @Value("${app.quota.enabled:false}")
+    boolean enabled;
+
+    @Value("${app.quota.max-bytes:1073741824}")
+    long maxBytes;
+
+    @Value("${app.quota.max-objects:10000}")
+    long maxObjects;
+
+    @Value("${app.quota.idle-evict-seconds:600}")
+    long idleEvictSeconds;
+
+    private static final int REFRESH_CHUNK = 1000;
+
+    /**
+     * persisted: giá trị đã có trong MongoDB (chỉ luồng flush ghi); pending: thay đổi chưa flush
+     */
+    static final class Account {
+        final AtomicLong persistedBytes = new AtomicLong();
+        final AtomicLong persistedObjects = new AtomicLong();
+        final LongAdder pendingBytes = new LongAdder();
+        final LongAdder pendingObjects = new LongAdder();
+        volatile long lastUsedAt = System.nanoTime();
+
+        long bytes() {
+            return persistedBytes.get() + pendingBytes.sum();
+        }
+
+        long objects() {
+            return persistedObjects.get() + pendingObjects.sum();
+        }
+
+        void add(long bytes, long objects) {
+            pendingBytes.add(bytes);
+            pendingObjects.add(objects);
+        }
+
+        boolean idle(long idleNanos) {
+            return pendingBytes.sum() == 0 && pendingObjects.sum() == 0 && System.nanoTime() - lastUsedAt > idleNanos;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Giữ chỗ trước khi ghi dữ liệu; vượt quota thì trả lại phần vừa giữ và ném STORAGE_QUOTA_EXCEEDED.
+     * Hai request đồng thời cùng sát ngưỡng có thể cùng bị từ chối, nhưng không bao giờ cùng lọt qua.
+     * ownerId null (job nền, không có người dùng đăng nhập) thì bỏ qua.
+     */
+    public void reserve(String ownerId, long bytes, long objects) {
+        if (!enabled || ownerId == null) {
+            return;
+        }
+        Account account = change(ownerId, bytes, objects);
+        if (account.bytes() > maxBytes || account.objects() > maxObjects) {
+            change(ownerId, -bytes, -objects);
+            log.info("Storage quota exceeded for owner {}: {} byte(s), {} object(s) requested", ownerId, bytes, objects);
+            throw new AppException(ErrorCode.STORAGE_QUOTA_EXCEEDED);
+        }
+    }
+
+    /**
+     * Chỉ kiểm tra, không giữ chỗ (dùng khi cấp URL upload trực tiếp, dữ liệu chưa tới service)
+     */
+    public void check(String ownerId, long bytes, long objects) {
+        if (!enabled || ownerId == null) {
+            return;
+        }
+        Account account = change(ownerId, 0, 0);
+        if (account.bytes() + bytes > maxBytes || account.objects() + objects > maxObjects) {
+            throw new AppException(ErrorCode.STORAGE_QUOTA_EXCEEDED);
+        }
+    }
+
+    // Trả lại phần đã reserve khi upload thất bại
+    public void release(String ownerId, long bytes, long objects) {
+        record(ownerId, -bytes, -objects);
+    }
+
+    // Ghi nhận thay đổi đã xảy ra (vd. xoá: giá trị âm), không kiểm tra quota
+    public void record(String ownerId, long bytes, long objects) {
+        if (!enabled || ownerId == null) {
+            return;
+        }
+        change(ownerId, bytes, objects);
+    }
+
+    /**
+     * Mọi thay đổi đi qua computeIfPresent trên cùng key với bước bỏ account khỏi bộ nhớ, nên không cộng nhầm vào
+     * account đã bị bỏ. Account chưa có (lần đầu gặp owner hoặc đã bị bỏ) được nạp từ MongoDB ngoài compute:
+     * đọc MongoDB khi đang giữ khoá bin của ConcurrentHashMap sẽ chặn mọi owner khác cùng bin.
+     */
+    private Account change(String ownerId, long bytes, long objects) {
+        while (true) {
+            if (!accounts.containsKey(ownerId)) {
+                // Hai luồng cùng nạp thì chỉ bản đặt vào trước được dùng
+                accounts.putIfAbsent(ownerId, load(ownerId));
+            }
+            Account account = accounts.computeIfPresent(ownerId, (id, current) -> {
+                current.add(bytes, objects);
+                current.lastUsedAt = System.nanoTime();
+                return current;
+            });
+            if (account != null) {
+                return account;
+            }
+            // Bị bỏ khỏi bộ nhớ giữa hai bước: nạp lại
+        }
+    }
+
+    private Account load(String ownerId) {
+        Account loaded = new Account();
+        storageUsageRepository.findById(ownerId).ifPresent(usage -> {
+            loaded.persistedBytes.set(usage.getBytes());
+            loaded.persistedObjects.set(usage.getObjects());
+        });
+        return loaded;
+    }
+
+    /**
+     * Ghi phần chênh lệch của mọi owner trong một lệnh bulk upsert $inc (tổng âm bị kẹp về 0), sau đó nạp lại tổng
+     * của mọi owner trong bộ nhớ từ MongoDB để nhận cả thay đổi do instance khác ghi.
+     */
+    @Scheduled(fixedDelayString = "${app.quota.flush-interval-ms:5000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, long[]> deltas = new HashMap<>();
+        accounts.forEach((ownerId, account) -> {
+            long bytes = account.pendingBytes.sum();
+            long objects = account.pendingObjects.sum();
+            if (bytes == 0 && objects == 0) {
+                return;
+            }
+            // Chuyển sang persisted trước rồi mới trừ pending: trong khoảng giữa tổng chỉ có thể cao hơn thực tế
+            account.persistedBytes.addAndGet(bytes);
+            account.persistedObjects.addAndGet(objects);
+            account.add(-bytes, -objects);
+            deltas.put(ownerId, new long[]{bytes, objects});
+        });
+        if (!deltas.isEmpty() && !write(deltas)) {
+            return;
+        }
+        refresh();
+        // Bỏ account không còn dùng tới; account có thay đổi chưa flush thì giữ lại
+        accounts.keySet().forEach(ownerId -> accounts.computeIfPresent(ownerId,
+                (id, account) -> account.idle(TimeUnit.SECONDS.toNanos(idleEvictSeconds)) ? null : account));
+        log.debug("Flushed storage usage of {} owner(s), {} cached", deltas.size(), accounts.size());
+    }
+
+    private boolean write(Map<String, long[]> deltas) {
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StorageUsage.class);
+            deltas.forEach((ownerId, delta) -> bulk.upsert(
+                    Query.query(Criteria.where("_id").is(ownerId)),
+                    new Update().inc("bytes", delta[0]).inc("objects", delta[1]).currentDate("updatedAt")));
+            bulk.execute();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush storage usage of {} owner(s), will retry: {}", deltas.size(), e.getMessage());
+            deltas.forEach((ownerId, delta) -> {
+                Account account = accounts.computeIfPresent(ownerId, (id, current) -> {
+                    current.persistedBytes.addAndGet(-delta[0]);
+                    current.persistedObjects.addAndGet(-delta[1]);
+                    current.add(delta[0], delta[1]);
+                    return current;
+                });
+                if (account == null) {
+                    // Đã bị bỏ khỏi bộ nhớ: nạp lại (chưa gồm delta vì ghi lỗi) rồi giữ delta chờ flush sau
+                    change(ownerId, delta[0], delta[1]);
+                }
+            });
+            return false;
+        }
+
+        // Xoá file có từ trước khi bật quota (chưa từng được cộng) làm tổng âm: kẹp về 0 để không cho thêm quota
+        Criteria owners = Criteria.where("_id").in(deltas.keySet());
+        mongoTemplate.updateMulti(Query.query(new Criteria().andOperator(owners, Criteria.where("bytes").lt(0))),
+                new Update().set("bytes", 0L), StorageUsage.class);
+        mongoTemplate.updateMulti(Query.query(new Criteria().andOperator(owners, Criteria.where("objects").lt(0))),
+                new Update().set("objects", 0L), StorageUsage.class);
+        return true;
+    }
+
+    private void refresh() {
+        List<String> ownerIds = new ArrayList<>(accounts.keySet());
+        for (int from = 0; from < ownerIds.size(); from += REFRESH_CHUNK) {
+            List<String> chunk = ownerIds.subList(from, Math.min(from + REFRESH_CHUNK, ownerIds.size()));
+            storageUsageRepository.findAllById(chunk).forEach(usage -> {
+                Account account = accounts.get(usage.getId());
+                if (account != null) {
+                    account.persistedBytes.set(usage.getBytes());
+                    account.persistedObjects.set(usage.getObjects());
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+}
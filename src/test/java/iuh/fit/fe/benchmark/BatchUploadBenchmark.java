@@ -0,0 +1,105 @@
+package iuh.fit.fe.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import iuh.fit.fe.repository.ModerationReviewRepository;
+import iuh.fit.fe.service.ImageDerivativeService;
+import iuh.fit.fe.service.ImageValidationService;
+import iuh.fit.fe.service.ObjectKeyGenerator;
+import iuh.fit.fe.service.S3ObjectCache;
+import iuh.fit.fe.service.S3Service;
+import iuh.fit.fe.service.StorageQuotaService;
+import iuh.fit.fe.support.InProcessS3Server;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * So sánh thời gian upload một lô ảnh: putObject tuần tự (cách cũ) và S3Service.uploadFile
+ * (putObject song song qua S3AsyncClient), chạy với S3 giả lập trong process nên không cần AWS.
+ * <p>
+ * Chạy: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=iuh.fit.fe.benchmark.BatchUploadBenchmark
+ * <br>Tham số (tuỳ chọn): số file/lô, kích thước file (KB), độ trễ mỗi request (ms), số vòng đo.
+ */
+public class BatchUploadBenchmark {
+    private static final String BUCKET = "bench";
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int fileKb = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 40;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        List<MultipartFile> files = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            byte[] data = new byte[fileKb * 1024];
+            ThreadLocalRandom.current().nextBytes(data);
+            files.add(new MockMultipartFile("files", "image-" + i + ".jpg", "image/jpeg", data));
+        }
+
+        try (InProcessS3Server server = new InProcessS3Server(latencyMs);
+             S3Client s3Client = server.syncClient();
+             S3AsyncClient s3AsyncClient = server.asyncClient(64);
+             ExecutorService streamExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            ImageValidationService validation = Mockito.mock(ImageValidationService.class);
+            // Chỉ đo upload ảnh gốc, không sinh ảnh phái sinh
+            ImageDerivativeService derivatives = Mockito.mock(ImageDerivativeService.class);
+            Mockito.when(derivatives.render(Mockito.any()))
+                    .thenReturn(CompletableFuture.completedFuture(List.of()));
+            S3Service s3Service = new S3Service(s3Client, s3AsyncClient, streamExecutor, validation, derivatives, null,
+                    new ObjectKeyGenerator(), Mockito.mock(StorageQuotaService.class), new SimpleMeterRegistry(),
+                    Mockito.mock(S3ObjectCache.class), Mockito.mock(ModerationReviewRepository.class));
+            ReflectionTestUtils.setField(s3Service, "bucketName", BUCKET);
+            ReflectionTestUtils.setField(s3Service, "region", "us-east-1");
+            ReflectionTestUtils.setField(s3Service, "pipelinedUpload", false);
+
+            double sequential = measure(rounds, () -> uploadSequential(s3Client, files));
+            double parallel = measure(rounds, () -> s3Service.uploadFile(files));
+
+            System.out.printf("batch=%d file=%dKB latency=%dms rounds=%d%n", batchSize, fileKb, latencyMs, rounds);
+            System.out.printf("sequential putObject : %8.1f ms/batch%n", sequential);
+            System.out.printf("parallel (async)     : %8.1f ms/batch%n", parallel);
+            System.out.printf("speed-up             : %8.2fx%n", sequential / parallel);
+        }
+    }
+
+    private static void uploadSequential(S3Client s3Client, List<MultipartFile> files) throws Exception {
+        for (MultipartFile file : files) {
+            s3Client.putObject(PutObjectRequest.builder()
+                            .bucket(BUCKET)
+                            .key(file.getOriginalFilename())
+                            .contentType(file.getContentType())
+                            .build(),
+                    RequestBody.fromBytes(file.getBytes()));
+        }
+    }
+
+    private static double measure(int rounds, Batch batch) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            batch.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            batch.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / rounds;
+    }
+
+    @FunctionalInterface
+    private interface Batch {
+        void run() throws Exception;
+    }
+}
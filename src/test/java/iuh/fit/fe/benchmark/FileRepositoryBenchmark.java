@@ -0,0 +1,104 @@
+package iuh.fit.fe.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import iuh.fit.fe.dto.FileInfo;
+import iuh.fit.fe.entity.FileMgmt;
+import iuh.fit.fe.repository.FileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * FileRepository.store (ghi file tạm + checksum + rename, có/không fsync) và read (mở file + đọc hết nội dung)
+ * trên thư mục tạm. Kết quả phụ thuộc đĩa của máy chạy, chỉ so sánh các lần đo trên cùng một máy.
+ * <p>
+ * Chạy: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=FileRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileRepositoryBenchmark {
+    @Param({"64", "1024"})
+    int sizeKb;
+
+    @Param({"NEVER", "ALWAYS"})
+    FileRepository.FsyncPolicy fsync;
+
+    Path storageDir;
+    FileRepository fileRepository;
+    MockMultipartFile file;
+    FileMgmt stored;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("file-repository-bench");
+        fileRepository = new FileRepository(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileRepository, "fileStorage", storageDir.toString());
+        ReflectionTestUtils.setField(fileRepository, "urlPrefix", "http://localhost/media/download/");
+        ReflectionTestUtils.setField(fileRepository, "fsyncPolicy", fsync);
+        ReflectionTestUtils.setField(fileRepository, "sha256Enabled", false);
+
+        // seed cố định để nội dung giống nhau giữa các lần chạy
+        byte[] data = new byte[sizeKb * 1024];
+        new Random(42).nextBytes(data);
+        file = new MockMultipartFile("file", "photo.jpg", "image/jpeg", data);
+
+        FileInfo info = fileRepository.store(file);
+        stored = new FileMgmt();
+        stored.setPath(info.getPath());
+    }
+
+    // Xoá file đã ghi sau mỗi iteration để thư mục không phình ra làm lệch số đo
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.list(storageDir)) {
+            for (Path path : files.toList()) {
+                if (!path.toString().equals(stored.getPath())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(storageDir);
+    }
+
+    @Benchmark
+    public FileInfo store() throws IOException {
+        return fileRepository.store(file);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        try (InputStream in = fileRepository.read(stored).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
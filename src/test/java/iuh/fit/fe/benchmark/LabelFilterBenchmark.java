@@ -0,0 +1,84 @@
+package iuh.fit.fe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iuh.fit.fe.service.ModerationPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.rekognition.model.ModerationLabel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đánh giá nhãn kiểm duyệt bằng ModerationPolicy đã biên dịch từ moderation-policy.json
+ * (ngưỡng theo nhãn, kế thừa theo nhãn cha, luật theo category) trên danh sách nhãn giống response thật.
+ * <p>
+ * Chạy: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=LabelFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelFilterBenchmark {
+    // Nhãn cấp 2/3 thường gặp kèm nhãn cha (taxonomy Rekognition)
+    private static final String[][] LABELS = {
+            {"Suggestive", null}, {"Female Swimwear Or Underwear", "Suggestive"}, {"Revealing Clothes", "Suggestive"},
+            {"Alcohol", null}, {"Drinking", "Alcohol"}, {"Tobacco", null}, {"Smoking", "Tobacco"},
+            {"Rude Gestures", null}, {"Middle Finger", "Rude Gestures"}, {"Gambling", null},
+            {"Violence", null}, {"Weapon Violence", "Violence"}, {"Visually Disturbing", null},
+            {"Explosions And Blasts", "Visually Disturbing"}, {"Nudity", "Explicit Nudity"},
+    };
+
+    // clean: chỉ nhãn được phép; mixed: có cả nhãn cấm, phần lớn dưới ngưỡng
+    @Param({"clean", "mixed"})
+    String labelSet;
+
+    @Param({"5", "30"})
+    int labelCount;
+
+    // avatar chặn thêm nhãn và có ngưỡng thấp hơn default
+    @Param({"default", "avatar"})
+    String category;
+
+    ModerationPolicy policy;
+    List<ModerationLabel> labels;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = LabelFilterBenchmark.class.getResourceAsStream("/moderation-policy.json")) {
+            policy = ModerationPolicy.compile(new ObjectMapper().readValue(in, ModerationPolicy.Definition.class), 80.0f);
+        }
+
+        Random random = new Random(42);
+        int pool = "clean".equals(labelSet) ? 10 : LABELS.length;
+        labels = new ArrayList<>(labelCount);
+        for (int i = 0; i < labelCount; i++) {
+            String[] label = LABELS[random.nextInt(pool)];
+            labels.add(ModerationLabel.builder()
+                    .name(label[0])
+                    .parentName(label[1])
+                    .confidence(50f + random.nextFloat() * 40f)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<ModerationLabel> violations() {
+        return policy.violations(category, labels);
+    }
+}
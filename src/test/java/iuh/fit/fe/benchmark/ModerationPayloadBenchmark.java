@@ -0,0 +1,105 @@
+package iuh.fit.fe.benchmark;
+
+import iuh.fit.fe.service.ImageTranscoder;
+import iuh.fit.fe.service.ModerationImagePreprocessor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.rekognition.model.DetectModerationLabelsRequest;
+import software.amazon.awssdk.services.rekognition.model.Image;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * So sánh payload gửi Rekognition trước/sau ModerationImagePreprocessor: kích thước, thời gian tiền xử lý
+ * và độ trễ mỗi lời gọi. Mặc định độ trễ được mô phỏng (RTT + thời gian truyền theo băng thông uplink);
+ * thêm tham số "aws" để gọi DetectModerationLabels thật (dùng default credentials chain).
+ * <p>
+ * Chạy: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=iuh.fit.fe.benchmark.ModerationPayloadBenchmark
+ * <br>Tham số (tuỳ chọn): width, height, uplink (Mbps), RTT (ms), số vòng đo, "aws".
+ */
+public class ModerationPayloadBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4032;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3024;
+        double uplinkMbps = args.length > 2 ? Double.parseDouble(args[2]) : 50;
+        long rttMs = args.length > 3 ? Long.parseLong(args[3]) : 60;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        boolean realAws = args.length > 5 && "aws".equalsIgnoreCase(args[5]);
+
+        ImageTranscoder transcoder = new ImageTranscoder();
+        byte[] original = transcoder.encode(photoLike(width, height), "jpeg", 0.95f);
+        MockMultipartFile file = new MockMultipartFile("files", "photo.jpg", "image/jpeg", original);
+
+        ModerationImagePreprocessor preprocessor = new ModerationImagePreprocessor(transcoder);
+        ReflectionTestUtils.setField(preprocessor, "enabled", true);
+        ReflectionTestUtils.setField(preprocessor, "maxEdge", 1280);
+        ReflectionTestUtils.setField(preprocessor, "quality", 0.85f);
+        ReflectionTestUtils.setField(preprocessor, "passthroughMaxBytes", 256L * 1024);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            preprocessor.prepare(file);
+        }
+        long start = System.nanoTime();
+        byte[] prepared = null;
+        for (int i = 0; i < rounds; i++) {
+            prepared = preprocessor.prepare(file);
+        }
+        double prepareMs = (System.nanoTime() - start) / 1_000_000.0 / rounds;
+
+        Call call;
+        if (realAws) {
+            RekognitionClient client = RekognitionClient.create();
+            call = payload -> client.detectModerationLabels(DetectModerationLabelsRequest.builder()
+                    .image(Image.builder().bytes(SdkBytes.fromByteArrayUnsafe(payload)).build())
+                    .build());
+        } else {
+            call = payload -> Thread.sleep(rttMs + (long) (payload.length * 8 / (uplinkMbps * 1000)));
+        }
+        double rawCallMs = measure(rounds, call, original);
+        double preparedCallMs = measure(rounds, call, prepared);
+
+        System.out.printf("image=%dx%d mode=%s%n", width, height,
+                realAws ? "aws" : String.format("simulated (%.0f Mbps, %d ms RTT)", uplinkMbps, rttMs));
+        System.out.printf("payload   raw: %10d bytes | prepared: %10d bytes (%.1f%%)%n",
+                original.length, prepared.length, 100.0 * prepared.length / original.length);
+        System.out.printf("preprocess   : %10.1f ms%n", prepareMs);
+        System.out.printf("call      raw: %10.1f ms | prepared: %10.1f ms (+%.1f ms preprocess)%n",
+                rawCallMs, preparedCallMs, prepareMs);
+    }
+
+    // Gradient + nhiễu để JPEG có kích thước gần với ảnh chụp thật
+    private static BufferedImage photoLike(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(40)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(40)) & 0xFF;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(40)) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static double measure(int rounds, Call call, byte[] payload) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            call.run(payload);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            call.run(payload);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / rounds;
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void run(byte[] payload) throws Exception;
+    }
+}
@@ -0,0 +1,69 @@
+package iuh.fit.fe.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import iuh.fit.fe.service.ObjectKeyGenerator;
+import iuh.fit.fe.service.S3Service;
+import iuh.fit.fe.service.StorageQuotaService;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * S3Service.customizeFileName (sinh key, chạy 4 luồng để thấy tranh chấp trên state dùng chung)
+ * và extractKey (URL đầy đủ có ký tự encode và key thuần).
+ * <p>
+ * Chạy: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=ObjectKeyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectKeyBenchmark {
+    private static final String FILE_NAME = "C:\\fakepath\\Ảnh sản phẩm mới nhất 2024.jpeg";
+    private static final String URL =
+            "https://bench.s3.us-east-1.amazonaws.com/3f/%E1%BA%A2nh%20s%E1%BA%A3n%20ph%E1%BA%A9m_01J9ZK7W3XQ5M.jpeg";
+    private static final String KEY = "3f/product_01J9ZK7W3XQ5M.jpeg";
+
+    S3Service s3Service;
+
+    @Setup
+    public void setUp() {
+        ObjectKeyGenerator keyGenerator = new ObjectKeyGenerator();
+        ReflectionTestUtils.setField(keyGenerator, "nodeId", 7L);
+        ReflectionTestUtils.setField(keyGenerator, "hashPrefixLength", 2);
+        ReflectionTestUtils.invokeMethod(keyGenerator, "init");
+        // customizeFileName/extractKey không gọi S3 nên không cần client
+        s3Service = new S3Service(null, null, null, null, null, null, keyGenerator,
+                Mockito.mock(StorageQuotaService.class), new SimpleMeterRegistry(), null, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String customizeFileName() {
+        return s3Service.customizeFileName(FILE_NAME);
+    }
+
+    @Benchmark
+    public String extractKeyFromUrl() {
+        return s3Service.extractKey(URL);
+    }
+
+    @Benchmark
+    public String extractKeyFromKey() {
+        return s3Service.extractKey(KEY);
+    }
+}
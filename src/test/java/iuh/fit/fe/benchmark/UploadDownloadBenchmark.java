@@ -0,0 +1,213 @@
+package iuh.fit.fe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import iuh.fit.fe.repository.ModerationReviewRepository;
+import iuh.fit.fe.service.ImageDerivativeService;
+import iuh.fit.fe.service.ImageValidationService;
+import iuh.fit.fe.service.ModerationImagePreprocessor;
+import iuh.fit.fe.service.ModerationPolicyService;
+import iuh.fit.fe.service.ModerationVerdictCache;
+import iuh.fit.fe.service.ObjectKeyGenerator;
+import iuh.fit.fe.service.RekognitionGuard;
+import iuh.fit.fe.service.S3ObjectCache;
+import iuh.fit.fe.service.S3Service;
+import iuh.fit.fe.service.StorageQuotaService;
+import iuh.fit.fe.support.InProcessRekognitionServer;
+import iuh.fit.fe.support.InProcessS3Server;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end S3Service.uploadFile (kiểm duyệt + ghi S3, pipeline hoặc validate-rồi-upload) và downloadFile
+ * với S3/Rekognition giả lập trong process. latencyMs mô phỏng round trip tới AWS; 0 = chỉ đo overhead
+ * của service, SDK và HTTP cục bộ. objectCache bật S3ObjectCache cho download (chỉ tầng heap).
+ * <p>
+ * Chạy: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=UploadDownloadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class UploadDownloadBenchmark {
+    private static final String BUCKET = "bench";
+    private static final String DOWNLOAD_KEY = "download/photo.jpg";
+
+    @Param({"0", "20"})
+    long latencyMs;
+
+    @Param({"true", "false"})
+    boolean pipelined;
+
+    @Param({"false", "true"})
+    boolean objectCache;
+
+    @Param({"5"})
+    int batchSize;
+
+    @Param({"256"})
+    int fileKb;
+
+    InProcessS3Server s3Server;
+    InProcessRekognitionServer rekognitionServer;
+    S3Client s3Client;
+    S3AsyncClient s3AsyncClient;
+    RekognitionClient rekognitionClient;
+    ExecutorService streamExecutor;
+    ExecutorService moderationExecutor;
+    S3Service s3Service;
+    List<MultipartFile> files;
+    byte[] downloadData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        s3Server = new InProcessS3Server(latencyMs);
+        rekognitionServer = new InProcessRekognitionServer(latencyMs);
+        s3Client = s3Server.syncClient();
+        s3AsyncClient = s3Server.asyncClient(64);
+        rekognitionClient = rekognitionServer.client();
+        streamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        moderationExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // Cache verdict và tiền xử lý ảnh tắt để mỗi ảnh đều đi tới Rekognition với nguyên bytes
+        ModerationVerdictCache verdictCache = new ModerationVerdictCache(null, meterRegistry);
+        ReflectionTestUtils.setField(verdictCache, "enabled", false);
+        ModerationImagePreprocessor preprocessor = new ModerationImagePreprocessor(null);
+        ReflectionTestUtils.setField(preprocessor, "enabled", false);
+        // Rate limit đặt cao hơn throughput của benchmark để chỉ đo overhead của guard
+        RekognitionGuard guard = new RekognitionGuard(meterRegistry);
+        ReflectionTestUtils.setField(guard, "initialRate", 100_000.0);
+        ReflectionTestUtils.setField(guard, "minRate", 1.0);
+        ReflectionTestUtils.setField(guard, "maxRate", 100_000.0);
+        ReflectionTestUtils.setField(guard, "burst", 1_000.0);
+        ReflectionTestUtils.setField(guard, "maxWaitMs", 2_000L);
+        ReflectionTestUtils.setField(guard, "decreaseFactor", 0.5);
+        ReflectionTestUtils.setField(guard, "increasePerSuccess", 0.2);
+        ReflectionTestUtils.setField(guard, "failureThreshold", 5);
+        ReflectionTestUtils.setField(guard, "openSeconds", 30L);
+        ReflectionTestUtils.invokeMethod(guard, "init");
+        ModerationPolicyService policy = new ModerationPolicyService(new DefaultResourceLoader(), new ObjectMapper(), meterRegistry);
+        ReflectionTestUtils.setField(policy, "location", "classpath:moderation-policy.json");
+        ReflectionTestUtils.setField(policy, "confidenceThreshold", 80.0f);
+        ReflectionTestUtils.invokeMethod(policy, "init");
+        ImageValidationService validation = new ImageValidationService(
+                rekognitionClient, guard, policy, moderationExecutor, verdictCache, preprocessor, meterRegistry);
+        ReflectionTestUtils.setField(validation, "maxConcurrency", 8);
+        ReflectionTestUtils.setField(validation, "fallback", ImageValidationService.FallbackPolicy.FAIL_FAST);
+        ReflectionTestUtils.invokeMethod(validation, "init");
+
+        ImageDerivativeService derivatives = new ImageDerivativeService(null, null);
+        ReflectionTestUtils.setField(derivatives, "enabled", false);
+
+        ObjectKeyGenerator keyGenerator = new ObjectKeyGenerator();
+        ReflectionTestUtils.setField(keyGenerator, "nodeId", 7L);
+        ReflectionTestUtils.invokeMethod(keyGenerator, "init");
+
+        S3ObjectCache cache = new S3ObjectCache(s3Client, streamExecutor, meterRegistry);
+        ReflectionTestUtils.setField(cache, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(cache, "enabled", objectCache);
+        ReflectionTestUtils.setField(cache, "maxBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(cache, "maxObjectBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "revalidateAfterSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxStaleSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "diskDir", "");
+        ReflectionTestUtils.invokeMethod(cache, "init");
+
+        s3Service = new S3Service(s3Client, s3AsyncClient, streamExecutor, validation, derivatives, null,
+                keyGenerator, Mockito.mock(StorageQuotaService.class), meterRegistry, cache,
+                Mockito.mock(ModerationReviewRepository.class));
+        ReflectionTestUtils.setField(s3Service, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(s3Service, "region", "us-east-1");
+        ReflectionTestUtils.setField(s3Service, "pipelinedUpload", pipelined);
+        ReflectionTestUtils.setField(s3Service, "stagingPrefix", "staging/");
+        ReflectionTestUtils.setField(s3Service, "quarantinePrefix", "quarantine/");
+        ReflectionTestUtils.setField(s3Service, "moderationPrefix", "moderation/");
+        ReflectionTestUtils.setField(s3Service, "deleteParallelism", 8);
+        ReflectionTestUtils.setField(s3Service, "deleteMaxAttempts", 1);
+
+        Random random = new Random(42);
+        files = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            byte[] data = new byte[fileKb * 1024];
+            random.nextBytes(data);
+            files.add(new MockMultipartFile("files", "image-" + i + ".jpg", "image/jpeg", data));
+        }
+        downloadData = new byte[fileKb * 1024];
+        random.nextBytes(downloadData);
+        putDownloadObject();
+    }
+
+    // Bỏ object đã upload sau mỗi iteration để S3 giả lập không giữ hết dữ liệu trên heap
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        s3Server.objects().clear();
+        putDownloadObject();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        s3Client.close();
+        s3AsyncClient.close();
+        rekognitionClient.close();
+        streamExecutor.close();
+        moderationExecutor.close();
+        s3Server.close();
+        rekognitionServer.close();
+    }
+
+    @Benchmark
+    public List<String> upload() throws IOException {
+        return s3Service.uploadFile(files);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        try (ResponseInputStream<GetObjectResponse> in = s3Service.downloadFile(DOWNLOAD_KEY, null)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private void putDownloadObject() {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(BUCKET)
+                        .key(DOWNLOAD_KEY)
+                        .contentType("image/jpeg")
+                        .build(),
+                RequestBody.fromBytes(downloadData));
+    }
+}
@@ -0,0 +1,119 @@
+package iuh.fit.fe.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import iuh.fit.fe.entity.DeletionJob;
+import iuh.fit.fe.entity.FileMgmt;
+import iuh.fit.fe.mapper.FileMgmtMapper;
+import iuh.fit.fe.repository.DeletionJobRepository;
+import iuh.fit.fe.repository.FileMgmtRepository;
+import iuh.fit.fe.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeletionJobServiceTest {
+    private final DeletionJobRepository deletionJobRepository = mock(DeletionJobRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final FileMgmtRepository fileMgmtRepository = mock(FileMgmtRepository.class);
+    private final FileRepository fileRepository = mock(FileRepository.class);
+    private final StorageQuotaService storageQuotaService = mock(StorageQuotaService.class);
+
+    private DeletionJobService deletionJobService;
+
+    @BeforeEach
+    void setUp() {
+        FileService fileService = new FileService(fileRepository, fileMgmtRepository, mock(FileMgmtMapper.class),
+                mongoTemplate, storageQuotaService, new SimpleMeterRegistry());
+        deletionJobService = new DeletionJobService(
+                deletionJobRepository, mongoTemplate, mock(S3Service.class), fileService, fileRepository);
+        ReflectionTestUtils.setField(deletionJobService, "maxKeysPerRound", 5000);
+        ReflectionTestUtils.setField(deletionJobService, "leaseSeconds", 300L);
+        ReflectionTestUtils.setField(deletionJobService, "maxAttempts", 5);
+    }
+
+    @Test
+    void doesNotDeleteFilesOwnedByAnotherUser() throws Exception {
+        FileMgmt own = file("own.jpg", "attacker");
+        FileMgmt victim = file("victim.jpg", "victim");
+        when(fileMgmtRepository.findById("own.jpg")).thenReturn(Optional.of(own));
+        when(fileMgmtRepository.findById("victim.jpg")).thenReturn(Optional.of(victim));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(DeletionJob.class)))
+                .thenReturn(DeletionJob.builder()
+                        .id("job-1")
+                        .status(DeletionJob.Status.RUNNING)
+                        .requestedBy("attacker")
+                        .s3Keys(List.of())
+                        .localFiles(List.of("own.jpg", "victim.jpg"))
+                        .attempts(1)
+                        .createdAt(Instant.now())
+                        .build())
+                .thenReturn(null);
+
+        deletionJobService.drain();
+
+        verify(fileMgmtRepository).delete(own);
+        verify(fileMgmtRepository, never()).delete(victim);
+        verify(fileRepository).delete(Path.of(own.getPath()));
+        verify(fileRepository, never()).delete(Path.of(victim.getPath()));
+        verify(storageQuotaService, never()).record(eq("victim"), anyLong(), anyLong());
+
+        ArgumentCaptor<DeletionJob> saved = ArgumentCaptor.forClass(DeletionJob.class);
+        verify(deletionJobRepository).save(saved.capture());
+        assertEquals(List.of("own.jpg"), saved.getValue().getDeleted());
+        assertEquals(List.of("victim.jpg"), saved.getValue().getNotFound());
+        assertEquals(List.of(), saved.getValue().getFailed());
+        assertEquals(DeletionJob.Status.COMPLETED, saved.getValue().getStatus());
+    }
+
+    @Test
+    void reportsMissingFileAsNotFound() throws Exception {
+        when(fileMgmtRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(DeletionJob.class)))
+                .thenReturn(DeletionJob.builder()
+                        .id("job-2")
+                        .status(DeletionJob.Status.RUNNING)
+                        .requestedBy("attacker")
+                        .localFiles(List.of("missing.jpg"))
+                        .attempts(1)
+                        .build())
+                .thenReturn(null);
+
+        deletionJobService.drain();
+
+        ArgumentCaptor<DeletionJob> saved = ArgumentCaptor.forClass(DeletionJob.class);
+        verify(deletionJobRepository).save(saved.capture());
+        assertEquals(List.of("missing.jpg"), saved.getValue().getNotFound());
+        verify(fileMgmtRepository, never()).delete(any());
+    }
+
+    private static FileMgmt file(String name, String owner) {
+        return FileMgmt.builder()
+                .id(name)
+                .ownerId(owner)
+                .path("/data/" + name)
+                .size(100)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package iuh.fit.fe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.rekognition.model.ModerationLabel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModerationPolicyTest {
+
+    // Danh sách nhãn cấm cố định trước khi có file chính sách, áp dụng ở confidence >= 80 cho name hoặc parentName
+    private static final Set<String> LEGACY_BLOCKED_LABELS = Set.of(
+            "Explicit Nudity", "Nudity", "Graphic Male Nudity", "Graphic Female Nudity",
+            "Sexual Activity", "Illustrated Explicit Nudity", "Adult Toys",
+            "Violence", "Graphic Violence", "Physical Violence", "Weapon Violence",
+            "Weapons", "Self Injury", "Emaciated Bodies", "Corpses", "Hanging",
+            "Visually Disturbing", "Explosions And Blasts");
+    private static final float LEGACY_THRESHOLD = 80f;
+
+    @Test
+    void blockedParentAppliesToDescendants() {
+        ModerationPolicy policy = ModerationPolicy.compile(new ModerationPolicy.Definition(
+                "test", 80f,
+                Map.of("Child", "Parent", "Grandchild", "Child"),
+                Map.of("default", block(null, "Parent"))), 80f);
+
+        assertBlocked(policy, "default", label("Grandchild", "Child", 90f));
+        // Luật của tổ tiên được kế thừa ngay cả khi Rekognition không gửi parentName
+        assertBlocked(policy, "default", label("Grandchild", null, 90f));
+        assertBlocked(policy, "default", label("Child", "Parent", 80f));
+        assertAllowed(policy, "default", label("Grandchild", "Child", 79.9f));
+        assertAllowed(policy, "default", label("Unrelated", null, 99f));
+    }
+
+    @Test
+    void allowOverridesBlockedParent() {
+        ModerationPolicy policy = ModerationPolicy.compile(new ModerationPolicy.Definition(
+                "test", 80f,
+                Map.of("Weapons", "Violence", "Knife", "Weapons"),
+                Map.of("default", block(null, "Violence"),
+                        "seller", new ModerationPolicy.CategoryDefinition(null, null, null, List.of("Weapons")))), 80f);
+
+        assertAllowed(policy, "seller", label("Weapons", "Violence", 99f));
+        assertAllowed(policy, "seller", label("Knife", "Weapons", 99f));
+        assertBlocked(policy, "seller", label("Violence", null, 99f));
+        assertBlocked(policy, "default", label("Weapons", "Violence", 99f));
+        assertBlocked(policy, "default", label("Knife", "Weapons", 99f));
+    }
+
+    @Test
+    void categoryThresholdAppliesToInheritedLabels() {
+        ModerationPolicy policy = ModerationPolicy.compile(new ModerationPolicy.Definition(
+                "test", 80f,
+                Map.of("Weapons", "Violence"),
+                Map.of("default", block(null, "Violence"),
+                        "avatar", block(70f, "Suggestive"))), 80f);
+
+        // Nhãn cấm kế thừa từ default dùng ngưỡng 70 của avatar
+        assertBlocked(policy, "avatar", label("Violence", null, 75f));
+        assertBlocked(policy, "avatar", label("Weapons", "Violence", 70f));
+        assertBlocked(policy, "avatar", label("Suggestive", null, 70f));
+        assertAllowed(policy, "avatar", label("Weapons", "Violence", 69.9f));
+        assertAllowed(policy, "default", label("Violence", null, 75f));
+        assertAllowed(policy, "default", label("Suggestive", null, 99f));
+        assertEquals(70f, policy.minConfidence());
+    }
+
+    @Test
+    void rejectsCycleInHierarchy() {
+        ModerationPolicy.Definition cycle = new ModerationPolicy.Definition(
+                "test", 80f,
+                Map.of("A", "B", "B", "C", "C", "A"),
+                Map.of("default", block(null, "A")));
+        ModerationPolicy.Definition selfLoop = new ModerationPolicy.Definition(
+                "test", 80f, Map.of("A", "A"), Map.of("default", block(null, "B")));
+
+        assertThrows(IllegalArgumentException.class, () -> ModerationPolicy.compile(cycle, 80f));
+        assertThrows(IllegalArgumentException.class, () -> ModerationPolicy.compile(selfLoop, 80f));
+    }
+
+    @Test
+    void rejectsThresholdOutOfRange() {
+        ModerationPolicy.Definition definition = new ModerationPolicy.Definition(
+                "test", 80f, Map.of(), Map.of("avatar", block(101f, "Suggestive")));
+
+        assertThrows(IllegalArgumentException.class, () -> ModerationPolicy.compile(definition, 80f));
+    }
+
+    @Test
+    void defaultCategoryMatchesLegacyBlockedLabels() throws IOException {
+        ModerationPolicy.Definition definition;
+        try (InputStream in = getClass().getResourceAsStream("/moderation-policy.json")) {
+            definition = new ObjectMapper().readValue(in, ModerationPolicy.Definition.class);
+        }
+        ModerationPolicy policy = ModerationPolicy.compile(definition, LEGACY_THRESHOLD);
+
+        // Mọi nhãn xuất hiện trong chính sách với nhãn cha trực tiếp như Rekognition trả về, cùng vài nhãn không liên quan
+        Set<String> names = new LinkedHashSet<>(LEGACY_BLOCKED_LABELS);
+        names.addAll(definition.hierarchy().keySet());
+        names.addAll(definition.hierarchy().values());
+        names.addAll(List.of("Alcohol", "Smoking", "Gambling", "Suggestive", "Hate Symbols"));
+
+        for (String name : names) {
+            for (float confidence : new float[]{50f, 79.99f, 80f, 99f}) {
+                assertLegacyVerdict(policy, label(name, definition.hierarchy().get(name), confidence));
+            }
+        }
+        for (String parent : LEGACY_BLOCKED_LABELS) {
+            assertLegacyVerdict(policy, label("Unlisted Child", parent, 85f));
+            assertLegacyVerdict(policy, label("Unlisted Child", parent, 79f));
+        }
+    }
+
+    private static void assertLegacyVerdict(ModerationPolicy policy, ModerationLabel label) {
+        boolean legacy = label.confidence() >= LEGACY_THRESHOLD
+                && (LEGACY_BLOCKED_LABELS.contains(label.name())
+                || label.parentName() != null && LEGACY_BLOCKED_LABELS.contains(label.parentName()));
+        String message = label.name() + " / " + label.parentName() + " @ " + label.confidence();
+        assertEquals(legacy, !policy.violations(ModerationPolicy.DEFAULT_CATEGORY, List.of(label)).isEmpty(), message);
+        // Category không có trong chính sách dùng default
+        assertEquals(legacy, !policy.violations("unknown", List.of(label)).isEmpty(), message);
+    }
+
+    private static ModerationPolicy.CategoryDefinition block(Float threshold, String... labels) {
+        return new ModerationPolicy.CategoryDefinition(threshold, List.of(labels), null, null);
+    }
+
+    private static ModerationLabel label(String name, String parentName, float confidence) {
+        return ModerationLabel.builder().name(name).parentName(parentName).confidence(confidence).build();
+    }
+
+    private static void assertBlocked(ModerationPolicy policy, String category, ModerationLabel label) {
+        assertEquals(List.of(label), policy.violations(category, List.of(label)),
+                label.name() + " should be blocked in " + category);
+    }
+
+    private static void assertAllowed(ModerationPolicy policy, String category, ModerationLabel label) {
+        assertTrue(policy.violations(category, List.of(label)).isEmpty(),
+                label.name() + " should be allowed in " + category);
+    }
+}
@@ -0,0 +1,97 @@
+package iuh.fit.fe.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rekognition.RekognitionClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rekognition giả lập chạy trong process: DetectModerationLabels luôn trả về moderationLabelsJson
+ * (mặc định không có nhãn nào, tức ảnh hợp lệ) sau latencyMillis. Dùng cho benchmark/test không cần AWS.
+ */
+public class InProcessRekognitionServer implements AutoCloseable {
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final String moderationLabelsJson;
+    private final AtomicLong calls = new AtomicLong();
+
+    public InProcessRekognitionServer(long latencyMillis) throws IOException {
+        this(latencyMillis, "[]");
+    }
+
+    // moderationLabelsJson: mảng JSON theo định dạng của API, vd. [{"Name":"Violence","Confidence":97.5}]
+    public InProcessRekognitionServer(long latencyMillis, String moderationLabelsJson) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.moderationLabelsJson = moderationLabelsJson;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    // Số lời gọi DetectModerationLabels đã nhận
+    public long calls() {
+        return calls.get();
+    }
+
+    public RekognitionClient client() {
+        return RekognitionClient.builder()
+                .endpointOverride(endpoint())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            sleep();
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            if (target == null || !target.endsWith(".DetectModerationLabels")) {
+                json(exchange, 400, "{\"__type\":\"InvalidParameterException\",\"message\":\"Unsupported operation\"}");
+                return;
+            }
+            calls.incrementAndGet();
+            json(exchange, 200, "{\"ModerationLabels\":" + moderationLabelsJson + ",\"ModerationModelVersion\":\"7.0\"}");
+        }
+    }
+
+    private static void json(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/x-amz-json-1.1");
+        exchange.sendResponseHeaders(status, payload.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    private void sleep() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}